@@ -19,6 +19,7 @@ import diag.stn.STN.*;
 import diag.stn.analyze.GraphPath;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
@@ -301,38 +302,25 @@ public class GraphGenerator
     public static ArrayList<int[]> pathCalc(GraphPath g, int lb, int ub, Vertex end, 
             Graph graph)
     {
-        //g.smallPrint();
-        int dlb,dub;
+        FrozenGraph frozen = graph.freeze();
         ArrayList<int[]> pathLbUbs = new ArrayList<>();
-        // combine generatePaths & propagateWeights
-        LinkedHashSet<DEdge> edgeExp = graph.possibleEdges(g.getLastV());
-        
-        if(edgeExp == null || (edgeExp.size() < 1))
-            return pathLbUbs; // dead end!
-        for(DEdge de : edgeExp)
-        {
-            dlb = de.getLowerb() + lb;
-            dub = de.getUpperb() + ub;
-            if(de.getEnd().equals(end))
-            {
-                g.addStep(de, de.getEnd());
-                int[] lbub = new int[2];
-                lbub[0] = dlb;
-                lbub[1] = dub;
-                pathLbUbs.add(lbub);
-                g.removeLast();
-            }
-            ArrayList<int[]> returnedLbUbs;
-            if(!g.edgeUsed(de))  // shouldn't be part of current path(takes)
-            {
-                g.addStep(de, de.getEnd());
-                returnedLbUbs = pathCalc(g,dlb,dub, end, graph);
-                pathLbUbs.addAll(returnedLbUbs);
-                g.removeLast();
-            }
-        }
-        
-        return pathLbUbs; 
+        int last = frozen.indexOf(g.getLastV());
+        int target = frozen.indexOf(end);
+        if(last < 0 || target < 0)
+            return pathLbUbs; // not part of the graph
+        BitSet targets = new BitSet(frozen.vSize());
+        targets.set(target);
+        PathEnumerator enumerator = new PathEnumerator(frozen);
+        enumerator.enumerate(last, lb, ub, targets, 
+                frozen.reachability().reachersOf(target), usedIds(g, frozen),
+                (paths, pos, dlb, dub) -> 
+                {
+                    int[] lbub = new int[2];
+                    lbub[0] = dlb;
+                    lbub[1] = dub;
+                    pathLbUbs.add(lbub);
+                });
+        return pathLbUbs;
     }
     
     /**
@@ -345,32 +333,43 @@ public class GraphGenerator
      */
     public static ArrayList<GraphPath> obsPaths(GraphPath g, Vertex end, Graph graph)
     {
-        int dlb,dub;
-        ArrayList<GraphPath> paths = new ArrayList<>();
-        // combine generatePaths & propagateWeights
-        LinkedHashSet<DEdge> edgeExp = graph.possibleEdges(g.getLastV());
-        
-         if(edgeExp == null || (edgeExp.size() < 1))
-            return paths; // dead end!
-        for(DEdge de : edgeExp)
+        FrozenGraph frozen = graph.freeze();
+        ArrayList<GraphPath> found = new ArrayList<>();
+        int last = frozen.indexOf(g.getLastV());
+        int target = frozen.indexOf(end);
+        if(last < 0 || target < 0)
+            return found; // not part of the graph
+        BitSet targets = new BitSet(frozen.vSize());
+        targets.set(target);
+        PathEnumerator enumerator = new PathEnumerator(frozen);
+        enumerator.enumerate(last, 0, 0, targets, 
+                frozen.reachability().reachersOf(target), usedIds(g, frozen),
+                (paths, pos, dlb, dub) -> 
+                {
+                    GraphPath gp = g.copy();
+                    for(int i = 1; i <= paths.depth(); i++)
+                    {
+                        DEdge de = frozen.edge(paths.edgeIdAt(i));
+                        gp.addStep(de, de.getEnd());
+                    }
+                    DEdge de = frozen.edge(frozen.edgeId(pos));
+                    gp.addStep(de, de.getEnd());
+                    found.add(gp);
+                });
+        return found;
+    }
+    
+    /* Ids of the edges of g that are part of the frozen graph (may not be used
+    again when extending g) */
+    private static BitSet usedIds(GraphPath g, FrozenGraph frozen)
+    {
+        BitSet used = new BitSet(frozen.eSize());
+        for(DEdge de : g.toEdges())
         {
-            if(de.getEnd().equals(end))
-            {
-                g.addStep(de, de.getEnd());
-                paths.add(g.copy());
-                g.removeLast();
-            }
-            ArrayList<GraphPath> returnedPaths;
-            if(!g.edgeUsed(de))  // shouldn't be part of current path(takes)
-            {
-                g.addStep(de, de.getEnd());
-                returnedPaths = obsPaths(g, end, graph);
-                paths.addAll(returnedPaths);
-                g.removeLast();
-            }
+            if(de.getID() < frozen.eSize() && frozen.edge(de.getID()) == de)
+                used.set(de.getID());
         }
-        
-        return paths;
+        return used;
     }
     
     /**
@@ -18,18 +18,16 @@ package diag.stn.STN;
 import java.util.ArrayList;
 
 /**
- * A Directed Edge. Currently only type of edge used in the graphs
+ * A Directed Edge. Currently only type of edge used in the graphs.
+ * The bounds, flags and possible changes are kept in an EdgeStore (normally
+ * the one of the Graph), this object is a handle to the edge id in that store.
  * @author Frans van den Heuvel
  */
 public class DEdge
 {
     private Vertex start, end;
-    private int plowerbound, pupperbound; // predicted lower + upper
-    private ArrayList<int[]> posChanges; // only use int[2] for lb/ub change
-    private boolean hazard;
-    private boolean contingent;
-    
-    private ArrayList<int[]> posConChanges;
+    private final EdgeStore store;
+    private final int id;
     
     /**
      * Constructor of a separate directed edge
@@ -38,13 +36,7 @@ public class DEdge
      */
     public DEdge(Vertex s, Vertex e)
     {
-        start = s;
-        end = e;
-        posChanges = new ArrayList<>();
-        hazard = false;
-        contingent = false;
-        
-        posConChanges = new ArrayList();
+        this(s, e, 0, 0);
     }
     
     /**
@@ -58,12 +50,23 @@ public class DEdge
     {
         start = s;
         end = e;
-        plowerbound = lb;
-        pupperbound = ub;
-        posChanges = new ArrayList<>();
-        hazard = false;
-        
-        posConChanges = new ArrayList();
+        store = new EdgeStore(1); // not part of a graph, own store
+        id = store.add(lb, ub);
+    }
+    
+    /**
+     * Constructor for an edge of which the data is already in a store
+     * @param st the store with the edge data
+     * @param ident edge id in the store
+     * @param s start vertex
+     * @param e end vertex
+     */
+    DEdge(EdgeStore st, int ident, Vertex s, Vertex e)
+    {
+        start = s;
+        end = e;
+        store = st;
+        id = ident;
     }
     
     /**
@@ -75,10 +78,8 @@ public class DEdge
      */
     public void addPossibleChange(int lowerboundChange, int upperboundChange)
     {
-        int[] posCha = new int[2];
-        posCha[0] = lowerboundChange; // for now assume that both can be pos/neg
-        posCha[1] = upperboundChange; // and no checks !
-        posChanges.add(posCha);
+        // for now assume that both can be pos/neg and no checks !
+        store.addChange(id, lowerboundChange, upperboundChange);
     }
     
     /**
@@ -90,10 +91,7 @@ public class DEdge
      */
     public void addPossibleConChange(int lowerboundChange, int upperboundChange)
     {
-        int[] posCha = new int[2];
-        posCha[0] = lowerboundChange; // for now assume that both can be pos/neg
-        posCha[1] = upperboundChange; // and no checks !
-        posConChanges.add(posCha);
+        store.addConChange(id, lowerboundChange, upperboundChange);
     }
     
     /**
@@ -103,7 +101,7 @@ public class DEdge
      */
     public void setPossibleConProblem(boolean problem)
     {
-        this.hazard = problem;
+        store.setHazard(id, problem);
     }
     
     /**
@@ -114,15 +112,9 @@ public class DEdge
      */
     public ArrayList<int[]> getPossibleChanges()
     {
-        ArrayList<int[]> changesPos = new ArrayList<>(posChanges.size());
-        for(int[] chng: posChanges)
-        {
-            int[] x = new int[2];
-            x[0] = chng[0];
-            x[1] = chng[1];
-            changesPos.add(x);
-        }
-        return changesPos; // Dirty for now but separate STN from diagnosis!
+        int[] flat = new int[2 * store.changeCount(id)];
+        store.getChanges(id, flat);
+        return toPairs(flat); // Dirty for now but separate STN from diagnosis!
     }
     
     /**
@@ -133,12 +125,117 @@ public class DEdge
      */
     public ArrayList<int[]> getPossibleConChanges()
     {
-        ArrayList<int[]> changesPos = new ArrayList<>(posConChanges.size());
-        for(int[] chng: posConChanges)
+        int[] flat = new int[2 * store.conChangeCount(id)];
+        store.getConChanges(id, flat);
+        return toPairs(flat);
+    }
+    
+    /**
+     * Number of possible changes stored for this edge
+     * @return integer
+     */
+    public int possibleChangeCount()
+    {
+        return store.changeCount(id);
+    }
+    
+    /**
+     * Number of possible consistency based changes stored for this edge
+     * @return integer
+     */
+    public int possibleConChangeCount()
+    {
+        return store.conChangeCount(id);
+    }
+    
+    /**
+     * Can all the possible changes of this edge be combined, ie. is there one
+     * change that fixes every path this edge was part of. Kept up to date when
+     * changes are added so it does not need to go over the changes.
+     * @return true if the intersection of the changes is not empty
+     */
+    public boolean changesCombine()
+    {
+        return store.changesCombine(id);
+    }
+    
+    /**
+     * Lower bound of the combined (intersection of all) possible changes
+     * @return integer, only meaningful when changesCombine() is true
+     */
+    public int getCombinedLowerb()
+    {
+        return store.combinedLowerb(id);
+    }
+    
+    /**
+     * Upper bound of the combined (intersection of all) possible changes
+     * @return integer, only meaningful when changesCombine() is true
+     */
+    public int getCombinedUpperb()
+    {
+        return store.combinedUpperb(id);
+    }
+    
+    /**
+     * Same as changesCombine() but for the consistency based changes
+     * @return true if the intersection of the changes is not empty
+     */
+    public boolean conChangesCombine()
+    {
+        return store.conChangesCombine(id);
+    }
+    
+    /**
+     * Lower bound of the combined consistency based changes
+     * @return integer, only meaningful when conChangesCombine() is true
+     */
+    public int getCombinedConLowerb()
+    {
+        return store.combinedConLowerb(id);
+    }
+    
+    /**
+     * Upper bound of the combined consistency based changes
+     * @return integer, only meaningful when conChangesCombine() is true
+     */
+    public int getCombinedConUpperb()
+    {
+        return store.combinedConUpperb(id);
+    }
+    
+    /**
+     * The id of this edge. Edges of the same Graph have unique ids, these are
+     * dense and can be used for array or bitset based lookups. An edge which
+     * is not part of a Graph has a store of its own (and id 0).
+     * @return integer with the edge id
+     */
+    public int getID()
+    {
+        return id;
+    }
+    
+    /**
+     * Check if both edges keep their data in the same store (are part of the
+     * same Graph), only then the edge ids can be compared. An edge which is
+     * not part of a Graph only shares its store with itself.
+     * @param other some other edge
+     * @return true if the ids of both edges are from the same store
+     */
+    public boolean sameStore(DEdge other)
+    {
+        return store == other.store;
+    }
+    
+    /* Split a flat lb,ub,lb,ub array into a list of int[2] */
+    private static ArrayList<int[]> toPairs(int[] flat)
+    {
+        ArrayList<int[]> changesPos = new ArrayList<>(flat.length / 2);
+        for(int i = 0; i < flat.length; i += 2)
         {
             int[] x = new int[2];
-            x[0] = chng[0];
-            x[1] = chng[1];
+            x[0] = flat[i];
+            x[1] = flat[i + 1];
             changesPos.add(x);
         }
         return changesPos;
@@ -150,7 +247,7 @@ public class DEdge
      */
     public void setLowerb(int lb)
     {
-        plowerbound = lb;
+        store.setLowerb(id, lb);
     }
     
     /**
@@ -159,7 +256,7 @@ public class DEdge
      */
     public void setUpperb(int ub)
     {
-        pupperbound = ub;
+        store.setUpperb(id, ub);
     }
     
     /**
@@ -168,7 +265,7 @@ public class DEdge
      */
     public void makeContigent()
     {
-        contingent = true;
+        store.setContingent(id, true);
         addPossibleChange(0,0);
         // By having a possible change of [0,0] an edge will not be changed in
         // the final diagnosis, all other changes added to this edge will fail
@@ -180,7 +277,7 @@ public class DEdge
      */
     public boolean isContingent()
     {
-        return contingent;
+        return store.isContingent(id);
     }
     
     /**
@@ -207,7 +304,7 @@ public class DEdge
      */
     public int getLowerb()
     {
-        return plowerbound;
+        return store.getLowerb(id);
     }
     
     /**
@@ -216,7 +313,7 @@ public class DEdge
      */
     public int getUpperb()
     {
-        return pupperbound;
+        return store.getUpperb(id);
     }
     
     /**
@@ -226,7 +323,7 @@ public class DEdge
      */
     public boolean possibleConProblem()
     {
-        return hazard;
+        return store.isHazard(id);
     }
     
     /**
@@ -238,8 +335,8 @@ public class DEdge
     {
         if(this.start.getID() == other.start.getID())
             if(this.end.getID() == other.end.getID())
-                if(this.plowerbound == other.plowerbound &&
-                        this.pupperbound == other.pupperbound)
+                if(this.getLowerb() == other.getLowerb() &&
+                        this.getUpperb() == other.getUpperb())
                     return true;
         return false;
     }
@@ -0,0 +1,397 @@
+/*
+ * Copyright 2016 Frans van den Heuvel.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package diag.stn.STN;
+
+import java.util.Arrays;
+
+/**
+ * Stores the data of all edges of a Graph in primitive arrays (struct of arrays)
+ * indexed by a dense edge id. A DEdge object is only a handle to an id in this
+ * store. Besides the bounds and flags it keeps the possible changes that the
+ * analysts add to the edges, these are kept in growable int buffers instead
+ * of a list of int[2] per edge.
+ * @author Frans van den Heuvel
+ */
+public class EdgeStore
+{
+    private static final byte CONTINGENT = 1;
+    private static final byte HAZARD = 2;
+
+    private int size;
+    private int[] lowerb;
+    private int[] upperb;
+    private byte[] flags;
+
+    private ChangeList changes;    // MAC diagnosis changes
+    private ChangeList conChanges; // consistency based diagnosis changes
+
+    /**
+     * Create an empty store
+     */
+    public EdgeStore()
+    {
+        this(16);
+    }
+
+    /**
+     * Create an empty store with room for a number of edges
+     * @param expected number of edges expected to be added
+     */
+    public EdgeStore(int expected)
+    {
+        int cap = Math.max(expected, 1);
+        size = 0;
+        lowerb = new int[cap];
+        upperb = new int[cap];
+        flags = new byte[cap];
+        changes = new ChangeList(cap);
+        conChanges = new ChangeList(cap);
+    }
+
+    /**
+     * Add a new edge to the store
+     * @param lb lower bound on cost/time
+     * @param ub upper bound on cost/time
+     * @return the id of the new edge
+     */
+    public int add(int lb, int ub)
+    {
+        if(size == lowerb.length)
+        {
+            int cap = lowerb.length * 2;
+            lowerb = Arrays.copyOf(lowerb, cap);
+            upperb = Arrays.copyOf(upperb, cap);
+            flags = Arrays.copyOf(flags, cap);
+            changes.growEdges(cap);
+            conChanges.growEdges(cap);
+        }
+        int id = size++;
+        lowerb[id] = lb;
+        upperb[id] = ub;
+        flags[id] = 0;
+        return id;
+    }
+
+    /**
+     * Number of edge ids given out, all ids are in [0, size())
+     * @return integer
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Get lower bound of an edge
+     * @param id edge id
+     * @return integer with lower bound
+     */
+    public int getLowerb(int id)
+    {
+        return lowerb[id];
+    }
+
+    /**
+     * Get upper bound of an edge
+     * @param id edge id
+     * @return integer with upper bound
+     */
+    public int getUpperb(int id)
+    {
+        return upperb[id];
+    }
+
+    /**
+     * Set the lower bound of an edge
+     * @param id edge id
+     * @param lb lower bound
+     */
+    public void setLowerb(int id, int lb)
+    {
+        lowerb[id] = lb;
+    }
+
+    /**
+     * Set the upper bound of an edge
+     * @param id edge id
+     * @param ub upper bound
+     */
+    public void setUpperb(int id, int ub)
+    {
+        upperb[id] = ub;
+    }
+
+    /**
+     * Is the edge contingent (can not be changed by a diagnosis)
+     * @param id edge id
+     * @return true if contingent
+     */
+    public boolean isContingent(int id)
+    {
+        return (flags[id] & CONTINGENT) != 0;
+    }
+
+    /**
+     * Set or clear the contingent flag of an edge
+     * @param id edge id
+     * @param cont true for contingent
+     */
+    public void setContingent(int id, boolean cont)
+    {
+        if(cont)
+            flags[id] |= CONTINGENT;
+        else
+            flags[id] &= ~CONTINGENT;
+    }
+
+    /**
+     * Is there a possible consistency problem when changing the edge
+     * @param id edge id
+     * @return true if there is a possibility
+     */
+    public boolean isHazard(int id)
+    {
+        return (flags[id] & HAZARD) != 0;
+    }
+
+    /**
+     * Set or clear the consistency hazard flag of an edge
+     * @param id edge id
+     * @param hazard true if there is a possible consistency problem
+     */
+    public void setHazard(int id, boolean hazard)
+    {
+        if(hazard)
+            flags[id] |= HAZARD;
+        else
+            flags[id] &= ~HAZARD;
+    }
+
+    /**
+     * Store a possible (MAC) change for an edge
+     * @param id edge id
+     * @param lb lower bound on the change
+     * @param ub upper bound on the change
+     */
+    public void addChange(int id, int lb, int ub)
+    {
+        changes.add(id, lb, ub);
+    }
+
+    /**
+     * Store a possible change for consistency based diagnosis
+     * @param id edge id
+     * @param lb lower bound on the change
+     * @param ub upper bound on the change
+     */
+    public void addConChange(int id, int lb, int ub)
+    {
+        conChanges.add(id, lb, ub);
+    }
+
+    /**
+     * Number of (MAC) changes stored for an edge
+     * @param id edge id
+     * @return integer
+     */
+    public int changeCount(int id)
+    {
+        return changes.count[id];
+    }
+
+    /**
+     * Number of consistency based changes stored for an edge
+     * @param id edge id
+     * @return integer
+     */
+    public int conChangeCount(int id)
+    {
+        return conChanges.count[id];
+    }
+
+    /**
+     * Is there a change that lies within all (MAC) changes of an edge, ie. is
+     * the intersection of the changes not empty. Kept up to date when adding
+     * changes so this is O(1).
+     * @param id edge id
+     * @return false if the intersection is empty or there are no changes
+     */
+    public boolean changesCombine(int id)
+    {
+        return changes.combines(id);
+    }
+
+    /**
+     * Lower bound of the intersection of all (MAC) changes of an edge
+     * @param id edge id
+     * @return integer, only meaningful if changesCombine(id)
+     */
+    public int combinedLowerb(int id)
+    {
+        return changes.maxLb[id];
+    }
+
+    /**
+     * Upper bound of the intersection of all (MAC) changes of an edge
+     * @param id edge id
+     * @return integer, only meaningful if changesCombine(id)
+     */
+    public int combinedUpperb(int id)
+    {
+        return changes.minUb[id];
+    }
+
+    /**
+     * Same as changesCombine but for the consistency based changes
+     * @param id edge id
+     * @return false if the intersection is empty or there are no changes
+     */
+    public boolean conChangesCombine(int id)
+    {
+        return conChanges.combines(id);
+    }
+
+    /**
+     * Lower bound of the intersection of all consistency based changes
+     * @param id edge id
+     * @return integer, only meaningful if conChangesCombine(id)
+     */
+    public int combinedConLowerb(int id)
+    {
+        return conChanges.maxLb[id];
+    }
+
+    /**
+     * Upper bound of the intersection of all consistency based changes
+     * @param id edge id
+     * @return integer, only meaningful if conChangesCombine(id)
+     */
+    public int combinedConUpperb(int id)
+    {
+        return conChanges.minUb[id];
+    }
+
+    /**
+     * Copies the (MAC) changes of an edge in order of addition
+     * @param id edge id
+     * @param out array of at least 2 * changeCount(id), filled as lb,ub,lb,ub..
+     */
+    public void getChanges(int id, int[] out)
+    {
+        changes.copy(id, out);
+    }
+
+    /**
+     * Copies the consistency based changes of an edge in order of addition
+     * @param id edge id
+     * @param out array of at least 2 * conChangeCount(id), filled as lb,ub,lb,ub..
+     */
+    public void getConChanges(int id, int[] out)
+    {
+        conChanges.copy(id, out);
+    }
+
+    /**
+     * Linked lists of intervals for all edges in a shared pool. Every entry
+     * knows the next entry of the same edge, so adding is O(1) and an edge's
+     * intervals are read in order of addition. The running intersection of
+     * the intervals of every edge is kept as well.
+     */
+    private static class ChangeList
+    {
+        private int[] head, tail, count; // per edge
+        private int[] maxLb, minUb;      // per edge, running intersection
+        private int[] lbs, ubs, next;    // per entry
+        private int entries;
+
+        ChangeList(int edges)
+        {
+            head = new int[edges];
+            tail = new int[edges];
+            count = new int[edges];
+            maxLb = new int[edges];
+            minUb = new int[edges];
+            Arrays.fill(head, -1);
+            Arrays.fill(tail, -1);
+            lbs = new int[edges];
+            ubs = new int[edges];
+            next = new int[edges];
+            entries = 0;
+        }
+
+        void growEdges(int cap)
+        {
+            int old = head.length;
+            head = Arrays.copyOf(head, cap);
+            tail = Arrays.copyOf(tail, cap);
+            count = Arrays.copyOf(count, cap);
+            maxLb = Arrays.copyOf(maxLb, cap);
+            minUb = Arrays.copyOf(minUb, cap);
+            Arrays.fill(head, old, cap, -1);
+            Arrays.fill(tail, old, cap, -1);
+        }
+
+        void add(int edge, int lb, int ub)
+        {
+            if(entries == lbs.length)
+            {
+                int cap = lbs.length * 2;
+                lbs = Arrays.copyOf(lbs, cap);
+                ubs = Arrays.copyOf(ubs, cap);
+                next = Arrays.copyOf(next, cap);
+            }
+            int entry = entries++;
+            lbs[entry] = lb;
+            ubs[entry] = ub;
+            next[entry] = -1;
+            if(tail[edge] < 0)
+                head[edge] = entry;
+            else
+                next[tail[edge]] = entry;
+            tail[edge] = entry;
+            if(count[edge] == 0)
+            {
+                maxLb[edge] = lb;
+                minUb[edge] = ub;
+            }
+            else
+            {
+                if(lb > maxLb[edge])
+                    maxLb[edge] = lb;
+                if(ub < minUb[edge])
+                    minUb[edge] = ub;
+            }
+            count[edge]++;
+        }
+
+        boolean combines(int edge)
+        {
+            if(count[edge] == 1)
+                return true; // a single change is always usable
+            return count[edge] > 1 && maxLb[edge] <= minUb[edge];
+        }
+
+        void copy(int edge, int[] out)
+        {
+            int i = 0;
+            for(int entry = head[edge]; entry >= 0; entry = next[entry])
+            {
+                out[i++] = lbs[entry];
+                out[i++] = ubs[entry];
+            }
+        }
+    }
+}
@@ -0,0 +1,342 @@
+/*
+ * Copyright 2016 Frans van den Heuvel.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package diag.stn.STN;
+
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+/**
+ * Read-only compressed sparse row (CSR) snapshot of a Graph. Vertices use the
+ * dense index of the Graph, edges get a dense integer id and the adjacency
+ * (forward and reverse) is stored in flat int arrays. Meant for the path
+ * enumeration of the analysts, which only needs to walk the graph and never
+ * changes it.
+ * Changes to the original Graph after freezing are not visible in the snapshot.
+ * @author Frans van den Heuvel
+ */
+public class FrozenGraph
+{
+    private final Vertex[] vertices;
+    private final DEdge[] edges;
+    private final IntHashMap index; // vertex id -> index
+    private boolean sharedIds; // some vertices have the same id
+    private ReachabilityIndex reachability; // created when first asked for
+
+    // Forward adjacency, edges of vertex v are in [offsets[v], offsets[v+1])
+    private final int[] offsets;
+    private final int[] targets;
+    private final int[] edgeIds;
+    private final int[] lb;
+    private final int[] ub;
+
+    // Reverse adjacency, same layout but for the incoming edges
+    private final int[] revOffsets;
+    private final int[] sources;
+    private final int[] revEdgeIds;
+    private final int[] revLb;
+    private final int[] revUb;
+
+    /**
+     * Builds the snapshot, only used by Graph.freeze()
+     * @param nodes all vertices in the graph in order of their dense index
+     * @param edgeList all edges in the graph
+     * @param idRange all edge ids are smaller than this number
+     * @param map out going edges per vertex
+     * @param reverseMap incoming edges per vertex
+     */
+    FrozenGraph(Vertex[] nodes, DEdge[] edgeList, int idRange,
+            Map<Vertex, LinkedHashSet<DEdge>> map,
+            Map<Vertex, LinkedHashSet<DEdge>> reverseMap)
+    {
+        vertices = nodes;
+        edges = new DEdge[idRange];
+        for(DEdge de : edgeList)
+            edges[de.getID()] = de;
+        index = new IntHashMap(nodes.length);
+        for(int i = 0; i < nodes.length; i++)
+        {
+            if(!index.containsKey(nodes[i].getID()))
+                index.put(nodes[i].getID(), i);
+            else
+                sharedIds = true;
+        }
+
+        offsets = new int[nodes.length + 1];
+        targets = new int[edgeList.length];
+        edgeIds = new int[edgeList.length];
+        lb = new int[edgeList.length];
+        ub = new int[edgeList.length];
+        int pos = 0;
+        for(int v = 0; v < nodes.length; v++)
+        {
+            offsets[v] = pos;
+            LinkedHashSet<DEdge> out = map.get(nodes[v]);
+            if(out == null)
+                continue;
+            for(DEdge de : out)  // keep the order of the Graph
+            {
+                int to = indexOf(de.getEnd());
+                if(to < 0 || edges[de.getID()] != de)
+                    continue; // not (fully) part of the graph anymore
+                targets[pos] = to;
+                edgeIds[pos] = de.getID();
+                lb[pos] = de.getLowerb();
+                ub[pos] = de.getUpperb();
+                pos++;
+            }
+        }
+        offsets[nodes.length] = pos;
+
+        revOffsets = new int[nodes.length + 1];
+        sources = new int[edgeList.length];
+        revEdgeIds = new int[edgeList.length];
+        revLb = new int[edgeList.length];
+        revUb = new int[edgeList.length];
+        pos = 0;
+        for(int v = 0; v < nodes.length; v++)
+        {
+            revOffsets[v] = pos;
+            LinkedHashSet<DEdge> in = reverseMap.get(nodes[v]);
+            if(in == null)
+                continue;
+            for(DEdge de : in)
+            {
+                int from = indexOf(de.getStart());
+                if(from < 0 || edges[de.getID()] != de)
+                    continue;
+                sources[pos] = from;
+                revEdgeIds[pos] = de.getID();
+                revLb[pos] = de.getLowerb();
+                revUb[pos] = de.getUpperb();
+                pos++;
+            }
+        }
+        revOffsets[nodes.length] = pos;
+    }
+
+    /**
+     * Number of vertices in the snapshot
+     * @return integer, all vertex indices are in [0, vSize())
+     */
+    public int vSize()
+    {
+        return vertices.length;
+    }
+
+    /**
+     * Upper bound on the edge ids (the edge id of the Graph is used, see
+     * DEdge.getID()). Ids of edges removed before freezing have no edge.
+     * @return integer, all edge ids are in [0, eSize())
+     */
+    public int eSize()
+    {
+        return edges.length;
+    }
+
+    /**
+     * Dense index of a vertex
+     * @param v Vertex object of the original Graph
+     * @return index or -1 if the vertex was not part of the Graph
+     */
+    public int indexOf(Vertex v)
+    {
+        int i = index.get(v.getID());
+        if(i >= 0 && vertices[i] == v)
+            return i;
+        if(sharedIds)
+        {
+            for(int j = 0; j < vertices.length; j++)
+            {
+                if(vertices[j] == v)
+                    return j;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Reachability index of this snapshot, the same index is returned every
+     * time so the computed bitsets are shared by all users of the snapshot.
+     * @return ReachabilityIndex object
+     */
+    public ReachabilityIndex reachability()
+    {
+        if(reachability == null)
+            reachability = new ReachabilityIndex(this);
+        return reachability;
+    }
+
+    /**
+     * Vertex object belonging to some index
+     * @param i dense vertex index
+     * @return Vertex object of the original Graph
+     */
+    public Vertex vertex(int i)
+    {
+        return vertices[i];
+    }
+
+    /**
+     * Edge object belonging to some edge id
+     * @param id dense edge id
+     * @return DEdge object of the original Graph, null for a removed edge
+     */
+    public DEdge edge(int id)
+    {
+        return edges[id];
+    }
+
+    /**
+     * First position of the out going edges of a vertex. Use together with
+     * outEnd(v) and the target/edgeId/lowerb/upperb methods.
+     * @param v dense vertex index
+     * @return position in the adjacency arrays
+     */
+    public int outStart(int v)
+    {
+        return offsets[v];
+    }
+
+    /**
+     * Position after the last out going edge of a vertex
+     * @param v dense vertex index
+     * @return position in the adjacency arrays (exclusive)
+     */
+    public int outEnd(int v)
+    {
+        return offsets[v + 1];
+    }
+
+    /**
+     * Out degree of a vertex
+     * @param v dense vertex index
+     * @return integer with number of edges
+     */
+    public int outDegree(int v)
+    {
+        return offsets[v + 1] - offsets[v];
+    }
+
+    /**
+     * End vertex of the edge on some position of the forward adjacency
+     * @param pos position between outStart and outEnd of some vertex
+     * @return dense vertex index
+     */
+    public int target(int pos)
+    {
+        return targets[pos];
+    }
+
+    /**
+     * Edge id on some position of the forward adjacency
+     * @param pos position between outStart and outEnd of some vertex
+     * @return dense edge id
+     */
+    public int edgeId(int pos)
+    {
+        return edgeIds[pos];
+    }
+
+    /**
+     * Lower bound of the edge on some position of the forward adjacency
+     * @param pos position between outStart and outEnd of some vertex
+     * @return lower bound at the moment of freezing
+     */
+    public int lowerb(int pos)
+    {
+        return lb[pos];
+    }
+
+    /**
+     * Upper bound of the edge on some position of the forward adjacency
+     * @param pos position between outStart and outEnd of some vertex
+     * @return upper bound at the moment of freezing
+     */
+    public int upperb(int pos)
+    {
+        return ub[pos];
+    }
+
+    /**
+     * First position of the incoming edges of a vertex
+     * @param v dense vertex index
+     * @return position in the reverse adjacency arrays
+     */
+    public int inStart(int v)
+    {
+        return revOffsets[v];
+    }
+
+    /**
+     * Position after the last incoming edge of a vertex
+     * @param v dense vertex index
+     * @return position in the reverse adjacency arrays (exclusive)
+     */
+    public int inEnd(int v)
+    {
+        return revOffsets[v + 1];
+    }
+
+    /**
+     * In degree of a vertex
+     * @param v dense vertex index
+     * @return integer with number of edges
+     */
+    public int inDegree(int v)
+    {
+        return revOffsets[v + 1] - revOffsets[v];
+    }
+
+    /**
+     * Start vertex of the edge on some position of the reverse adjacency
+     * @param pos position between inStart and inEnd of some vertex
+     * @return dense vertex index
+     */
+    public int source(int pos)
+    {
+        return sources[pos];
+    }
+
+    /**
+     * Edge id on some position of the reverse adjacency
+     * @param pos position between inStart and inEnd of some vertex
+     * @return dense edge id
+     */
+    public int inEdgeId(int pos)
+    {
+        return revEdgeIds[pos];
+    }
+
+    /**
+     * Lower bound of the edge on some position of the reverse adjacency
+     * @param pos position between inStart and inEnd of some vertex
+     * @return lower bound at the moment of freezing
+     */
+    public int inLowerb(int pos)
+    {
+        return revLb[pos];
+    }
+
+    /**
+     * Upper bound of the edge on some position of the reverse adjacency
+     * @param pos position between inStart and inEnd of some vertex
+     * @return upper bound at the moment of freezing
+     */
+    public int inUpperb(int pos)
+    {
+        return revUb[pos];
+    }
+}
@@ -15,6 +15,7 @@
  */
 package diag.stn.STN;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
@@ -31,10 +32,17 @@ public class Graph
 {
     private LinkedHashSet<Vertex> nodes;
     private LinkedHashSet<DEdge> edges;
+    private EdgeStore edgeStore; // data of all the edges, indexed by edge id
     private Map<Vertex, LinkedHashSet<DEdge>> map = new HashMap();
     private Map<Vertex, LinkedHashSet<DEdge>> reverseMap;
     // Extra map with all the edges from a Vertex
     
+    // Vertex registry, gives every vertex a dense index 0..n-1
+    private ArrayList<Vertex> vertexIndex; // dense index -> vertex
+    private IntHashMap idIndex; // vertex id -> dense index (first vertex with id)
+    private Map<String, Vertex> nameIndex; // name -> first vertex with name
+    private int duplicateIds, duplicateNames;
+    
     private boolean checkNegativeEdges;
     
     /**
@@ -44,6 +52,7 @@ public class Graph
     {
         nodes = new LinkedHashSet<>();
         edges = new LinkedHashSet<>();
+        edgeStore = new EdgeStore();
         
         checkNegativeEdges = true;
         
@@ -51,6 +60,12 @@ public class Graph
         // a particular node
         map = new HashMap();
         reverseMap = new HashMap();
+        
+        vertexIndex = new ArrayList<>();
+        idIndex = new IntHashMap();
+        nameIndex = new HashMap<>();
+        duplicateIds = 0;
+        duplicateNames = 0;
     }
     
     /**
@@ -98,7 +113,8 @@ public class Graph
         }
         
         
-        DEdge e = new DEdge(start, end, lowerbound, upperbound);
+        int id = edgeStore.add(lowerbound, upperbound);
+        DEdge e = new DEdge(edgeStore, id, start, end);
         if(cont)
             e.makeContigent();
         edges.add(e);
@@ -160,7 +176,19 @@ public class Graph
      */
     public void addVertex(Vertex v)
     {
-        nodes.add(v);
+        if(!nodes.add(v))
+            return; // already part of the graph
+        v.addGraph(this);
+        int index = vertexIndex.size();
+        vertexIndex.add(v);
+        if(idIndex.containsKey(v.getID()))
+            duplicateIds++;
+        else
+            idIndex.put(v.getID(), index);
+        if(nameIndex.containsKey(v.getName()))
+            duplicateNames++;
+        else
+            nameIndex.put(v.getName(), v);
     }
     
     /**
@@ -170,9 +198,12 @@ public class Graph
      */
     public boolean removeVertex(Vertex v)
     {
+        int index = indexOf(v);
         boolean out = nodes.remove(v);
         if(!out)
             return false;
+        v.removeGraph(this);
+        unregister(v, index);
         if(map.containsKey(v))
         {
             LinkedHashSet<DEdge> edgz = map.get(v);
@@ -374,13 +405,44 @@ public class Graph
      */
     public Vertex getVertex(String name)
     {
-        for(Vertex v : nodes)
+        return nameIndex.get(name);
+    }
+    
+    /* Updates the name lookup after a vertex of this graph has been renamed
+    (called by Vertex.setName), both names then go to the first vertex with
+    that name */
+    void renamed(Vertex v, String oldName)
+    {
+        String newName = v.getName();
+        if(newName.equals(oldName))
+            return;
+        Vertex firstOld = null, firstNew = null;
+        int oldCount = 0, newCount = 0; // after the rename
+        for(Vertex other : nodes)
         {
-            if(v.getName().equals(name))
-                return v;
+            if(other.getName().equals(oldName))
+            {
+                if(firstOld == null)
+                    firstOld = other;
+                oldCount++;
+            }
+            else if(other.getName().equals(newName))
+            {
+                if(firstNew == null)
+                    firstNew = other;
+                newCount++;
+            }
         }
-        System.err.println("Vertex not found, name: " + name);
-        return null;
+        if(firstOld == null)
+            nameIndex.remove(oldName);
+        else
+            nameIndex.put(oldName, firstOld);
+        nameIndex.put(newName, firstNew);
+        // the old name lost a vertex and the new name gained one
+        if(oldCount > 0)
+            duplicateNames--;
+        if(newCount > 1)
+            duplicateNames++;
     }
     
     /**
@@ -390,13 +452,88 @@ public class Graph
      */
     public Vertex getVertex(int id)
     {
-        for(Vertex v : nodes)
+        int index = idIndex.get(id);
+        if(index < 0)
+            return null;
+        return vertexIndex.get(index);
+    }
+    
+    /**
+     * The dense index of a vertex. All vertices in the graph have an index in
+     * [0, vSize()) which can be used for array based side tables. The index
+     * stays the same unless a vertex is removed, then the vertex with the
+     * highest index takes the place of the removed one.
+     * @param v Vertex object
+     * @return index or -1 if the vertex is not part of the graph
+     */
+    public int indexOf(Vertex v)
+    {
+        int index = idIndex.get(v.getID());
+        if(index >= 0 && vertexIndex.get(index) == v)
+            return index;
+        if(duplicateIds > 0 && nodes.contains(v))
+            return vertexIndex.indexOf(v); // vertex shares its id with another
+        return -1;
+    }
+    
+    /**
+     * The vertex belonging to a dense index (see indexOf)
+     * @param index integer in [0, vSize())
+     * @return Vertex object
+     */
+    public Vertex vertexAt(int index)
+    {
+        return vertexIndex.get(index);
+    }
+    
+    /* Removes a vertex from the registry and keeps the indices dense by
+    moving the last vertex to the free spot */
+    private void unregister(Vertex v, int index)
+    {
+        int last = vertexIndex.size() - 1;
+        Vertex moved = vertexIndex.remove(last);
+        if(index != last)
         {
-            if(v.getID() == id)
-                return v;
+            vertexIndex.set(index, moved);
+            if(idIndex.get(moved.getID()) == last)
+                idIndex.put(moved.getID(), index);
         }
-        System.err.println("Vertex not found, id: " + id);
-        return null;
+        if(idIndex.get(v.getID()) == index)
+        {
+            idIndex.remove(v.getID());
+            if(duplicateIds > 0)
+            {
+                for(Vertex other : nodes) // first one in order of addition
+                {
+                    if(other.getID() == v.getID())
+                    {
+                        idIndex.put(v.getID(), vertexIndex.indexOf(other));
+                        duplicateIds--;
+                        break;
+                    }
+                }
+            }
+        }
+        else if(duplicateIds > 0)
+            duplicateIds--;
+        if(nameIndex.get(v.getName()) == v)
+        {
+            nameIndex.remove(v.getName());
+            if(duplicateNames > 0)
+            {
+                for(Vertex other : nodes) // first one in order of addition
+                {
+                    if(other.getName().equals(v.getName()))
+                    {
+                        nameIndex.put(v.getName(), other);
+                        duplicateNames--;
+                        break;
+                    }
+                }
+            }
+        }
+        else if(duplicateNames > 0)
+            duplicateNames--;
     }
     
     /**
@@ -419,6 +556,16 @@ public class Graph
         return edgeList;
     }
     
+    /**
+     * Upper bound on the edge ids. All edges of this graph have an id in 
+     * [0, edgeIdRange()), ids of removed edges are not given out again.
+     * @return integer
+     */
+    public int edgeIdRange()
+    {
+        return edgeStore.size();
+    }
+    
     /**
      * Number of vertices
      * @return integer size of vertex array
@@ -438,6 +585,20 @@ public class Graph
         return checkNegativeEdges;
     }
     
+    /**
+     * Create a read-only snapshot of this graph in compressed sparse row format.
+     * Vertices keep their dense index (see indexOf) and edges their id (see
+     * DEdge.getID()). The bounds are copied, so later
+     * changes to this graph are not part of the snapshot.
+     * @return FrozenGraph object with forward and reverse adjacency
+     */
+    public FrozenGraph freeze()
+    {
+        Vertex[] vertices = vertexIndex.toArray(new Vertex[vertexIndex.size()]);
+        return new FrozenGraph(vertices, listAllEdges(), edgeStore.size(), map,
+                reverseMap);
+    }
+    
     /**
      * A deep copy method. Uses the old ID's and names.
      * @return Graph copy
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2016 Frans van den Heuvel.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package diag.stn.STN;
+
+/**
+ * Small open addressing hash map from int keys to non-negative int values.
+ * Used for looking up dense indices without boxing every key (see Graph).
+ * @author Frans van den Heuvel
+ */
+public class IntHashMap
+{
+    private int[] keys;
+    private int[] values;
+    private boolean[] used; // slot holds a key
+    private int size;
+    private int mask;
+
+    /**
+     * Create an empty map
+     */
+    public IntHashMap()
+    {
+        this(16);
+    }
+
+    /**
+     * Create an empty map with room for a number of keys
+     * @param expected number of keys expected to be stored
+     */
+    public IntHashMap(int expected)
+    {
+        int cap = 16;
+        while(cap < expected * 2)
+            cap <<= 1;
+        keys = new int[cap];
+        values = new int[cap];
+        used = new boolean[cap];
+        mask = cap - 1;
+        size = 0;
+    }
+
+    /**
+     * Get the value stored for some key
+     * @param key integer key
+     * @return stored value or -1 if the key is not in the map
+     */
+    public int get(int key)
+    {
+        int slot = slot(key);
+        while(used[slot])
+        {
+            if(keys[slot] == key)
+                return values[slot];
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Is some key stored in the map
+     * @param key integer key
+     * @return true if there is a value for the key
+     */
+    public boolean containsKey(int key)
+    {
+        return get(key) >= 0;
+    }
+
+    /**
+     * Store a value, replaces the old value if the key was already present
+     * @param key integer key
+     * @param value non-negative integer value
+     * @throws IllegalArgumentException if value is negative
+     */
+    public void put(int key, int value)
+    {
+        if(value < 0)
+            throw new IllegalArgumentException("IntHashMap can not store value " + value);
+        if((size + 1) * 2 > keys.length)
+            grow();
+        int slot = slot(key);
+        while(used[slot])
+        {
+            if(keys[slot] == key)
+            {
+                values[slot] = value;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        used[slot] = true;
+        size++;
+    }
+
+    /**
+     * Remove a key from the map
+     * @param key integer key
+     * @return the removed value or -1 if the key was not present
+     */
+    public int remove(int key)
+    {
+        int slot = slot(key);
+        while(used[slot])
+        {
+            if(keys[slot] == key)
+            {
+                int old = values[slot];
+                used[slot] = false;
+                size--;
+                // Shift the following entries back so lookups keep working
+                int next = (slot + 1) & mask;
+                while(used[next])
+                {
+                    int k = keys[next];
+                    int v = values[next];
+                    used[next] = false;
+                    size--;
+                    put(k, v);
+                    next = (next + 1) & mask;
+                }
+                return old;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Number of keys stored
+     * @return integer size
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Copy of the map, only clones the arrays
+     * @return new IntHashMap with the same keys and values
+     */
+    public IntHashMap copy()
+    {
+        return new IntHashMap(this);
+    }
+
+    private IntHashMap(IntHashMap other)
+    {
+        keys = other.keys.clone();
+        values = other.values.clone();
+        used = other.used.clone();
+        size = other.size;
+        mask = other.mask;
+    }
+
+    private int slot(int key)
+    {
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private void grow()
+    {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        boolean[] oldUsed = used;
+        keys = new int[oldKeys.length * 2];
+        values = new int[oldKeys.length * 2];
+        used = new boolean[oldKeys.length * 2];
+        mask = keys.length - 1;
+        size = 0;
+        for(int i = 0; i < oldKeys.length; i++)
+        {
+            if(oldUsed[i])
+                put(oldKeys[i], oldValues[i]);
+        }
+    }
+}
@@ -0,0 +1,295 @@
+/*
+ * Copyright 2016 Frans van den Heuvel.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package diag.stn.STN;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Counts the paths between two vertices of a FrozenGraph without enumerating
+ * them. Paths are counted the way the Analyst generates them: no edge is used
+ * twice and a path ends at the first time it reaches the target.
+ * Only the part of the graph that is reachable from the start and can reach
+ * the target is looked at. If that part has no cycles the count is exact
+ * (dynamic programming in topological order), otherwise an upper bound is
+ * given.
+ * @author Frans van den Heuvel
+ */
+public class PathCountEstimator
+{
+    // Maximum number of edge relaxations spent on counting walks in cyclic graphs
+    private static final long WALK_BUDGET = 10000000L;
+
+    private final FrozenGraph graph;
+
+    /**
+     * The estimated number of paths for a pair of vertices
+     */
+    public static class Estimate
+    {
+        /** Number of paths (exact) or an upper bound on it */
+        public final BigInteger paths;
+        /** True if paths is the exact number of paths */
+        public final boolean exact;
+        /** Mean number of edges on a path (upper bound if not exact) */
+        public final double meanLength;
+        /** Number of edges that can be part of a path */
+        public final int relevantEdges;
+
+        Estimate(BigInteger p, boolean ex, double mean, int edges)
+        {
+            paths = p;
+            exact = ex;
+            meanLength = mean;
+            relevantEdges = edges;
+        }
+    }
+
+    /**
+     * Create an estimator for a graph
+     * @param g FrozenGraph object
+     */
+    public PathCountEstimator(FrozenGraph g)
+    {
+        graph = g;
+    }
+
+    /**
+     * Estimate the number of paths from start to target
+     * @param start dense vertex index of the start (-1 if not in the graph)
+     * @param target dense vertex index of the target (-1 if not in the graph)
+     * @return Estimate object with the (bound on the) count
+     */
+    public Estimate count(int start, int target)
+    {
+        if(start < 0 || target < 0)
+            return new Estimate(BigInteger.ZERO, true, 0, 0);
+        BitSet relevant = relevantVertices(start, target);
+        if(!relevant.get(start) || !relevant.get(target))
+            return new Estimate(BigInteger.ZERO, true, 0, 0);
+
+        // In degree and edge count of the relevant subgraph, edges out of the
+        // target are never used (paths stop there) unless it is the start
+        int n = graph.vSize();
+        int[] inDeg = new int[n];
+        int edges = 0;
+        for(int v = relevant.nextSetBit(0); v >= 0; v = relevant.nextSetBit(v + 1))
+        {
+            if(v == target && v != start)
+                continue;
+            for(int k = graph.outStart(v); k < graph.outEnd(v); k++)
+            {
+                if(relevant.get(graph.target(k)))
+                {
+                    inDeg[graph.target(k)]++;
+                    edges++;
+                }
+            }
+        }
+
+        int[] order = start == target ? null : topologicalOrder(relevant, inDeg, target);
+        if(order != null)
+            return countAcyclic(order, relevant, start, target, edges);
+        BigInteger bound = arrangementBound(relevant, start, target);
+        BigInteger walks = walkBound(relevant, start, target, edges);
+        if(walks != null && walks.compareTo(bound) < 0)
+            bound = walks;
+        return new Estimate(bound, false, edges, edges);
+    }
+
+    /* Vertices reachable from start (not going through target) that can also
+    reach target */
+    private BitSet relevantVertices(int start, int target)
+    {
+        BitSet reach = graph.reachability().reachersOf(target);
+        BitSet seen = new BitSet(graph.vSize());
+        if(!reach.get(start))
+            return seen;
+        int[] queue = new int[graph.vSize()];
+        int head = 0, tail = 0;
+        seen.set(start);
+        queue[tail++] = start;
+        while(head < tail)
+        {
+            int v = queue[head++];
+            if(v == target && v != start)
+                continue;
+            for(int k = graph.outStart(v); k < graph.outEnd(v); k++)
+            {
+                int w = graph.target(k);
+                if(reach.get(w) && !seen.get(w))
+                {
+                    seen.set(w);
+                    queue[tail++] = w;
+                }
+            }
+        }
+        return seen;
+    }
+
+    /* Kahn's algorithm on the relevant subgraph, null if there is a cycle */
+    private int[] topologicalOrder(BitSet relevant, int[] inDeg, int target)
+    {
+        int[] deg = inDeg.clone();
+        int[] order = new int[relevant.cardinality()];
+        int head = 0, tail = 0;
+        for(int v = relevant.nextSetBit(0); v >= 0; v = relevant.nextSetBit(v + 1))
+        {
+            if(deg[v] == 0)
+                order[tail++] = v;
+        }
+        while(head < tail)
+        {
+            int v = order[head++];
+            if(v == target)
+                continue;
+            for(int k = graph.outStart(v); k < graph.outEnd(v); k++)
+            {
+                int w = graph.target(k);
+                if(relevant.get(w) && --deg[w] == 0)
+                    order[tail++] = w;
+            }
+        }
+        return tail == order.length ? order : null;
+    }
+
+    /* Exact count (and total length) of the paths on an acyclic subgraph */
+    private Estimate countAcyclic(int[] order, BitSet relevant, int start,
+            int target, int edges)
+    {
+        int n = graph.vSize();
+        BigInteger[] count = new BigInteger[n];
+        BigInteger[] length = new BigInteger[n]; // summed length of all paths
+        count[start] = BigInteger.ONE;
+        length[start] = BigInteger.ZERO;
+        for(int v : order)
+        {
+            if(v == target || count[v] == null)
+                continue;
+            for(int k = graph.outStart(v); k < graph.outEnd(v); k++)
+            {
+                int w = graph.target(k);
+                if(!relevant.get(w))
+                    continue;
+                BigInteger len = length[v].add(count[v]);
+                if(count[w] == null)
+                {
+                    count[w] = count[v];
+                    length[w] = len;
+                }
+                else
+                {
+                    count[w] = count[w].add(count[v]);
+                    length[w] = length[w].add(len);
+                }
+            }
+        }
+        BigInteger paths = count[target] == null ? BigInteger.ZERO : count[target];
+        double mean = 0;
+        if(paths.signum() > 0)
+            mean = ratio(length[target], paths);
+        return new Estimate(paths, true, mean, edges);
+    }
+
+    /* A path is known once the order in which it leaves each vertex over its
+    out going edges is known, so there are at most prod_v A(d_v) paths where
+    A(d) is the number of ordered selections of distinct out edges (none for
+    the target, unless paths also start there) */
+    private BigInteger arrangementBound(BitSet relevant, int start, int target)
+    {
+        BigInteger bound = BigInteger.ONE;
+        for(int v = relevant.nextSetBit(0); v >= 0; v = relevant.nextSetBit(v + 1))
+        {
+            if(v == target && v != start)
+                continue;
+            int d = 0;
+            for(int k = graph.outStart(v); k < graph.outEnd(v); k++)
+            {
+                if(relevant.get(graph.target(k)))
+                    d++;
+            }
+            // A(d) = sum_k d!/(d-k)!
+            BigInteger term = BigInteger.ONE;
+            BigInteger sum = BigInteger.ONE;
+            for(int k = 0; k < d; k++)
+            {
+                term = term.multiply(BigInteger.valueOf(d - k));
+                sum = sum.add(term);
+            }
+            bound = bound.multiply(sum);
+        }
+        return bound;
+    }
+
+    /* Number of walks from start to target with at most edges steps (every
+    path is such a walk). Null if this takes more than the budget or if a
+    count does not fit in a long (a saturated count is no upper bound) */
+    private BigInteger walkBound(BitSet relevant, int start, int target, int edges)
+    {
+        long work = 0;
+        int n = graph.vSize();
+        long[] cur = new long[n];
+        long[] next = new long[n];
+        long total = 0;
+        cur[start] = 1;
+        for(int step = 0; step < edges; step++)
+        {
+            Arrays.fill(next, 0);
+            boolean any = false;
+            for(int v = relevant.nextSetBit(0); v >= 0; v = relevant.nextSetBit(v + 1))
+            {
+                if(cur[v] == 0 || (v == target && step > 0))
+                    continue;
+                for(int k = graph.outStart(v); k < graph.outEnd(v); k++)
+                {
+                    int w = graph.target(k);
+                    if(!relevant.get(w))
+                        continue;
+                    next[w] = saturatedAdd(next[w], cur[v]);
+                    if(next[w] == Long.MAX_VALUE)
+                        return null; // too many, use the arrangement bound
+                    any = true;
+                    work++;
+                }
+            }
+            total = saturatedAdd(total, next[target]);
+            if(total == Long.MAX_VALUE)
+                return null;
+            if(!any)
+                break;
+            if(work > WALK_BUDGET)
+                return null;
+            long[] swap = cur;
+            cur = next;
+            next = swap;
+        }
+        return BigInteger.valueOf(total);
+    }
+
+    private static long saturatedAdd(long a, long b)
+    {
+        long r = a + b;
+        return r < 0 ? Long.MAX_VALUE : r;
+    }
+
+    /* a / b as a double for (possibly very) large integers */
+    private static double ratio(BigInteger a, BigInteger b)
+    {
+        int shift = Math.max(0, Math.max(a.bitLength(), b.bitLength()) - 1000);
+        return a.shiftRight(shift).doubleValue() / b.shiftRight(shift).doubleValue();
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2016 Frans van den Heuvel.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package diag.stn.STN;
+
+import java.util.BitSet;
+
+/**
+ * Iterative depth first enumeration of all paths (that do not use an edge
+ * twice) from a start vertex to a set of target vertices in a FrozenGraph.
+ * Uses an explicit stack of (vertex, next edge) frames, so very long paths do
+ * not overflow the call stack, and does not allocate while searching. Every
+ * found path is given to a Visitor which can read the path from the
+ * enumerator while it is being visited.
+ * Paths are found in the same order as a recursive search over the out going
+ * edges in graph order would find them.
+ * @author Frans van den Heuvel
+ */
+public class PathEnumerator
+{
+    /**
+     * Receives the paths found by the enumerator
+     */
+    public interface Visitor
+    {
+        /**
+         * A path to a target has been found. The path is the current path of
+         * the enumerator (see depth() and edgeIdAt(int)) followed by the edge on
+         * position pos, which ends in a target.
+         * @param paths the enumerator, only valid during the call
+         * @param pos position of the last edge in the forward adjacency
+         * @param lb lower bound of the full path (including the start bound)
+         * @param ub upper bound of the full path (including the start bound)
+         */
+        void pathFound(PathEnumerator paths, int pos, int lb, int ub);
+
+        /**
+         * A new vertex has been reached (also called for the start vertex).
+         * The current path ends in this vertex.
+         * @param paths the enumerator, only valid during the call
+         */
+        default void stepTaken(PathEnumerator paths) {}
+    }
+
+    private final FrozenGraph graph;
+    private boolean stopAtTarget;
+
+    // Stack, frame d is the vertex reached with d edges
+    private int[] vertexStack;
+    private int[] cursorStack; // next position to try in the forward adjacency
+    private int[] posStack;    // position of the edge used to reach the frame
+    private int[] lbStack;
+    private int[] ubStack;
+    private int depth;
+    private final BitSet used; // edge ids on the current path
+    private final int[] visits; // times a vertex is on the path (not as start)
+
+    /**
+     * Create an enumerator for a graph. The stack is sized for the longest
+     * possible path, so enumerating does not allocate.
+     * @param g FrozenGraph object that is searched
+     */
+    public PathEnumerator(FrozenGraph g)
+    {
+        graph = g;
+        int frames = g.eSize() + 1; // no edge is used twice
+        vertexStack = new int[frames];
+        cursorStack = new int[frames];
+        posStack = new int[frames];
+        lbStack = new int[frames];
+        ubStack = new int[frames];
+        used = new BitSet(Math.max(g.eSize(), 1));
+        visits = new int[g.vSize()];
+        stopAtTarget = false;
+    }
+
+    /**
+     * Set whether paths stop at their target. If set, a path to some target
+     * is only found when it does not pass that target earlier on (it ends at
+     * the first time it reaches it), and the search only continues through a
+     * vertex if another target which is not yet on the path can be reached
+     * from it. With one target this means the search stops at the target.
+     * If not set (default) every edge into a target gives a path, even an edge
+     * already on the path, and the search continues through the target over
+     * unused edges.
+     * @param stop true for stopping at targets
+     */
+    public void setStopAtTarget(boolean stop)
+    {
+        stopAtTarget = stop;
+    }
+
+    /**
+     * Find all paths from start to the targets
+     * @param start dense vertex index of the start
+     * @param lb lower bound at the start
+     * @param ub upper bound at the start
+     * @param targets vertex indices of the targets
+     * @param reach only vertices in this set are entered (use the vertices
+     * that can reach a target), null for all vertices
+     * @param excluded ids of edges that may not be used, can be null
+     * @param visitor receives the found paths
+     */
+    public void enumerate(int start, int lb, int ub, BitSet targets,
+            BitSet reach, BitSet excluded, Visitor visitor)
+    {
+        depth = 0;
+        vertexStack[0] = start;
+        cursorStack[0] = graph.outStart(start);
+        posStack[0] = -1;
+        lbStack[0] = lb;
+        ubStack[0] = ub;
+        int[] targetList = null;
+        BitSet[] targetReach = null;
+        if(stopAtTarget)
+        {
+            targetList = targets.stream().toArray();
+            targetReach = new BitSet[targetList.length];
+            for(int i = 0; i < targetList.length; i++)
+                targetReach[i] = graph.reachability().reachersOf(targetList[i]);
+        }
+        visitor.stepTaken(this);
+        while(depth >= 0)
+        {
+            int v = vertexStack[depth];
+            int k = cursorStack[depth];
+            if(k >= graph.outEnd(v))
+            {
+                // all edges tried, go back
+                if(depth > 0)
+                {
+                    used.clear(graph.edgeId(posStack[depth]));
+                    visits[v]--;
+                }
+                depth--;
+                continue;
+            }
+            cursorStack[depth] = k + 1;
+            int next = graph.target(k);
+            int id = graph.edgeId(k);
+            int dlb = lbStack[depth] + graph.lowerb(k);
+            int dub = ubStack[depth] + graph.upperb(k);
+            if(targets.get(next) && (!stopAtTarget || visits[next] == 0))
+                visitor.pathFound(this, k, dlb, dub);
+            if(stopAtTarget && !leadsToOpenTarget(next, targetList, targetReach))
+                continue;
+            if((reach == null || reach.get(next)) && !used.get(id) &&
+                    (excluded == null || !excluded.get(id)))
+            {
+                used.set(id);
+                visits[next]++;
+                depth++;
+                vertexStack[depth] = next;
+                cursorStack[depth] = graph.outStart(next);
+                posStack[depth] = k;
+                lbStack[depth] = dlb;
+                ubStack[depth] = dub;
+                visitor.stepTaken(this);
+            }
+        }
+        depth = 0;
+    }
+
+    /* Can v reach a target (other than v) which is not on the current path */
+    private boolean leadsToOpenTarget(int v, int[] targetList, BitSet[] targetReach)
+    {
+        for(int i = 0; i < targetList.length; i++)
+        {
+            int t = targetList[i];
+            if(t != v && visits[t] == 0 && targetReach[i].get(v))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * The graph which is searched
+     * @return FrozenGraph object
+     */
+    public FrozenGraph graph()
+    {
+        return graph;
+    }
+
+    /**
+     * Number of edges on the current path
+     * @return integer
+     */
+    public int depth()
+    {
+        return depth;
+    }
+
+    /**
+     * Vertex on some step of the current path
+     * @param step 0 (start) to depth()
+     * @return dense vertex index
+     */
+    public int vertexAt(int step)
+    {
+        return vertexStack[step];
+    }
+
+    /**
+     * Edge id of some step of the current path, the edge used to reach the
+     * vertex on that step
+     * @param step 1 to depth()
+     * @return dense edge id
+     */
+    public int edgeIdAt(int step)
+    {
+        return graph.edgeId(posStack[step]);
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2016 Frans van den Heuvel.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package diag.stn.STN;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Answers "can vertex u reach vertex t" in O(1) for a FrozenGraph. For every
+ * target asked for, a backward BFS marks all vertices that can reach it in a
+ * bitset. These bitsets are computed once and kept, so use one index per
+ * analysis. Used to skip parts of the graph during path enumeration which
+ * can never lead to the end of an observation.
+ * @author Frans van den Heuvel
+ */
+public class ReachabilityIndex
+{
+    private final FrozenGraph graph;
+    private final Map<Integer, BitSet> reachers;
+
+    /**
+     * Create an (empty) index, bitsets are computed when needed
+     * @param g FrozenGraph object that is used for the path enumeration
+     */
+    public ReachabilityIndex(FrozenGraph g)
+    {
+        graph = g;
+        reachers = new HashMap<>();
+    }
+
+    /**
+     * All vertices that can reach some target vertex (including the target).
+     * Do not change the returned bitset, it is shared.
+     * @param target dense vertex index of the target
+     * @return BitSet with a bit set for each vertex index that reaches target
+     */
+    public BitSet reachersOf(int target)
+    {
+        BitSet set = reachers.get(target);
+        if(set == null)
+        {
+            set = backwardSearch(target);
+            reachers.put(target, set);
+        }
+        return set;
+    }
+
+    /**
+     * Can some vertex reach the target vertex (with a path of 0 or more edges)
+     * @param from dense vertex index of the start
+     * @param target dense vertex index of the target
+     * @return true if there is a path from the start to the target
+     */
+    public boolean canReach(int from, int target)
+    {
+        return reachersOf(target).get(from);
+    }
+
+    /* BFS over the reverse adjacency starting at target */
+    private BitSet backwardSearch(int target)
+    {
+        BitSet seen = new BitSet(graph.vSize());
+        int[] queue = new int[graph.vSize()];
+        int head = 0, tail = 0;
+        seen.set(target);
+        queue[tail++] = target;
+        while(head < tail)
+        {
+            int v = queue[head++];
+            int end = graph.inEnd(v);
+            for(int k = graph.inStart(v); k < end; k++)
+            {
+                int from = graph.source(k);
+                if(!seen.get(from))
+                {
+                    seen.set(from);
+                    queue[tail++] = from;
+                }
+            }
+        }
+        return seen;
+    }
+}
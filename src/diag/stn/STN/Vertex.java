@@ -15,6 +15,8 @@
  */
 package diag.stn.STN;
 
+import java.util.ArrayList;
+
 /**
  * A single point in a Graph as object.
  * @author Frans van den Heuvel
@@ -23,6 +25,7 @@ public class Vertex
 {
     private String name;
     private int id;
+    private ArrayList<Graph> graphs; // graphs it is part of, null if none
     
     /**
      * Create Vertex with a certain id. Uses id as temporary name.
@@ -46,12 +49,44 @@ public class Vertex
     }
     
     /**
-     * Changes the name of the Vertex
+     * Changes the name of the Vertex (also in the name lookup of the graphs
+     * it is part of)
      * @param n String with the name
      */
     public void setName(String n)
     {
+        String old = getName();
         name = n;
+        if(graphs != null)
+        {
+            for(Graph g : graphs)
+                g.renamed(this, old);
+        }
+    }
+    
+    /* Called by a Graph when the vertex is added to it */
+    void addGraph(Graph g)
+    {
+        if(graphs == null)
+            graphs = new ArrayList<>(1);
+        graphs.add(g);
+    }
+    
+    /* Called by a Graph when the vertex is removed from it */
+    void removeGraph(Graph g)
+    {
+        if(graphs == null)
+            return;
+        for(int i = 0; i < graphs.size(); i++)
+        {
+            if(graphs.get(i) == g)
+            {
+                graphs.remove(i);
+                break;
+            }
+        }
+        if(graphs.isEmpty())
+            graphs = null;
     }
     
     /**
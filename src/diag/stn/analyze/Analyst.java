@@ -18,14 +18,21 @@ package diag.stn.analyze;
 import diag.stn.DiagSTN;
 import diag.stn.STN.*;
 import java.lang.Math;
+import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.Deque;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 
 /**
  * The analyst checks a model and diagnoses the possible problems in the model.
@@ -34,7 +41,14 @@ import java.util.Map;
  */
 public class Analyst
 {
+    // Default largest number of diagnoses stored for a state of the search
+    private static final int MEMO_LIMIT = 256;
+    // Memory budget (bytes) of the counts of countDiagnoses without a cache
+    private static final long COUNT_MEMORY = 64L << 20;
+    
     protected Graph graph;
+    protected FrozenGraph frozen; // snapshot of graph used for path generation
+    protected PathTrie pathTrie; // storage of the paths in obsPaths
     protected ArrayList<Observation> observations;
     protected Map<Vertex, Integer> fixedTimes; // add a 0/time point to any vertex
     protected Map<Observation, LinkedHashSet<GraphPath>> obsPaths;
@@ -44,6 +58,15 @@ public class Analyst
     
     protected LinkedHashSet<Observation> inconsistent;
     protected Map<GraphPath, int[]> predictions; // Just used for consistencyBasedDiag
+    protected Map<GraphPath[], PathIncidence> incidences; // see indexPaths
+    protected Map<GraphPath[], ForwardCheck> forwardChecks;
+    protected PathOrderingStrategy pathOrdering;
+    protected boolean forwardChecking;
+    protected SearchBudget budget; // null if there is no limit
+    protected SubproblemCache subproblems; // null if not used
+    protected int memoLimit; // see setMemoryBudget
+    protected LongAdder searchNodes;    // nodes of the diagnosis search tree
+    protected LongAdder prunedBranches; // branches cut by forward checking
     
     
     // Each observation might have multiple paths connected
@@ -62,6 +85,13 @@ public class Analyst
         graph = g;
         
         predictions = new HashMap();
+        incidences = new IdentityHashMap<>();
+        forwardChecks = new IdentityHashMap<>();
+        pathOrdering = PathOrderingStrategy.INSERTION;
+        forwardChecking = true;
+        memoLimit = MEMO_LIMIT;
+        searchNodes = new LongAdder();
+        prunedBranches = new LongAdder();
     }
     
     /**
@@ -74,6 +104,92 @@ public class Analyst
         observations.add(ob);
     }
     
+    /**
+     * Set the order in which the diagnosis search handles the paths that need
+     * solving. Default is the order in which the paths were generated. Note
+     * that another order can give other diagnoses.
+     * @param strategy PathOrderingStrategy object
+     */
+    public void setPathOrdering(PathOrderingStrategy strategy)
+    {
+        pathOrdering = strategy;
+    }
+    
+    /**
+     * Let the diagnosis search store the diagnoses below the states it has
+     * searched and reuse them when another branch reaches the same state (see
+     * SubproblemCache). Gives the same diagnoses (in the same order), but the
+     * stored diagnoses are kept in memory up to the budget. The diagnoses are
+     * still given out as they are found, only states with a few diagnoses
+     * below them are stored (see setMemoryBudget(long, int)). Off by default.
+     * The counts of countDiagnoses and edgeFrequencies are kept in the same
+     * cache, without it they use a cache of their own (64 MB).
+     * @param bytes memory budget for the stored states, 0 to switch it off
+     */
+    public void setMemoryBudget(long bytes)
+    {
+        setMemoryBudget(bytes, MEMO_LIMIT);
+    }
+    
+    /**
+     * Use the subproblem cache (see setMemoryBudget(long)) for the states
+     * with at most limit diagnoses below them. While searching below a state
+     * its diagnoses are collected up to the limit, so a larger limit reuses
+     * larger subtrees but also keeps more diagnoses in memory during the
+     * search (at most limit for every level of the search).
+     * @param bytes memory budget for the stored states, 0 to switch it off
+     * @param limit largest number of diagnoses stored for a state
+     * @throws IllegalArgumentException if limit is smaller than 1
+     */
+    public void setMemoryBudget(long bytes, int limit)
+    {
+        if(limit < 1)
+            throw new IllegalArgumentException("Memo limit needs to be at least 1");
+        memoLimit = limit;
+        subproblems = bytes > 0 ? new SubproblemCache(bytes) : null;
+    }
+    
+    /**
+     * The cache used by the diagnosis search (see setMemoryBudget)
+     * @return SubproblemCache object or null if there is none
+     */
+    public SubproblemCache getSubproblemCache()
+    {
+        return subproblems;
+    }
+    
+    /**
+     * Limit the diagnosis searches (generateDiagnosis and all other ways
+     * to search diagnoses) with a budget. When the budget is used up the search
+     * stops and the diagnoses found so far are returned, see isPartial.
+     * @param b SearchBudget object, null for no limit
+     */
+    public void setSearchBudget(SearchBudget b)
+    {
+        budget = b;
+    }
+    
+    /**
+     * Was the last diagnosis search stopped by its budget (see setSearchBudget),
+     * if so only part of the diagnoses were found
+     * @return true if the found diagnoses are not all diagnoses
+     */
+    public boolean isPartial()
+    {
+        return budget != null && budget.isExhausted();
+    }
+    
+    /**
+     * Set whether the diagnosis search looks ahead (see ForwardCheck). Looking
+     * ahead does not change the diagnoses that are found, it only stops
+     * searching branches without diagnoses earlier. On by default.
+     * @param check true for forward checking
+     */
+    public void setForwardChecking(boolean check)
+    {
+        forwardChecking = check;
+    }
+    
     /**
      * Adds a fixed time to the starting point, if the model should not start at 0
      * @param v Vertex that is the starting point
@@ -95,12 +211,76 @@ public class Analyst
     public void generatePaths()
     {
         // given the observations, what paths must be checked ?
-        // puts them in a map ! -> see simplePaths
+        // puts them in a map ! -> see storePath
         
+        frozen = graph.freeze();
+        pathTrie = new PathTrie();
+        PathEnumerator enumerator = new PathEnumerator(frozen);
+        enumerator.setStopAtTarget(true); // paths end at obs.endV
+        
+        // Observations with the same start are done in one search
+        Map<Integer, ObservationGroup> groups = new LinkedHashMap<>();
         for(Observation ob : observations)
         {
-            GraphPath g = new GraphPath(ob.startV);
-            simplePaths(g, ob);
+            int start = frozen.indexOf(ob.startV);
+            int end = frozen.indexOf(ob.endV);
+            if(start < 0 || end < 0)
+                continue; // not part of the graph so there are no paths
+            if(!frozen.reachability().canReach(start, end))
+                continue; // end can not be reached from start
+            ObservationGroup group = groups.get(start);
+            if(group == null)
+            {
+                group = new ObservationGroup(frozen.vSize());
+                groups.put(start, group);
+            }
+            group.add(ob, end, frozen.reachability().reachersOf(end));
+        }
+        for(Map.Entry<Integer, ObservationGroup> entry : groups.entrySet())
+        {
+            ObservationGroup group = entry.getValue();
+            enumerator.enumerate(entry.getKey(), 0, 0, group.targets, group.reach,
+                    null, (paths, pos, lb, ub) -> 
+                    {
+                        for(Observation ob : group.ending(frozen.target(pos)))
+                            storePath(ob, pathTrie.add(paths, pos));
+                    });
+        }
+    }
+    
+    /* Observations sharing a start vertex, indexed on their end vertex */
+    private static class ObservationGroup
+    {
+        private final IntHashMap endIndex; // end vertex -> position in byEnd
+        private final ArrayList<ArrayList<Observation>> byEnd;
+        private final BitSet targets; // all end vertices
+        private final BitSet reach;   // vertices that can reach some end
+        
+        ObservationGroup(int vertices)
+        {
+            endIndex = new IntHashMap();
+            byEnd = new ArrayList<>();
+            targets = new BitSet(vertices);
+            reach = new BitSet(vertices);
+        }
+        
+        void add(Observation ob, int end, BitSet reachers)
+        {
+            int i = endIndex.get(end);
+            if(i < 0)
+            {
+                i = byEnd.size();
+                endIndex.put(end, i);
+                byEnd.add(new ArrayList<>());
+                targets.set(end);
+                reach.or(reachers);
+            }
+            byEnd.get(i).add(ob);
+        }
+        
+        ArrayList<Observation> ending(int end)
+        {
+            return byEnd.get(endIndex.get(end));
         }
     }
     
@@ -151,12 +331,8 @@ public class Analyst
                         lb = 0;
                         ub = 0;
                     }
-                    for(int i=1; i < paths[j].stepSize(); i++)
-                    {
-                        DEdge de = paths[j].getStepE(i);
-                        lb += de.getLowerb();
-                        ub += de.getUpperb();
-                    }
+                    lb += paths[j].sumLowerb(); // O(1) for stored paths
+                    ub += paths[j].sumUpperb();
                     int[] lbub = new int[2];
                     lbub[0] = lb;
                     lbub[1] = ub;
@@ -221,9 +397,8 @@ public class Analyst
 //                            " pathLB:" + pathBounds[m][0] +
 //                            " obsUB:" + o.endUb +
 //                            " pathUB:" + pathBounds[m][1]);
-                    for(int n=1; n < paths[m].stepSize(); n++)
+                    for(DEdge de : paths[m].toEdges())
                     {
-                        DEdge de = paths[m].getStepE(n);
                         de.addPossibleChange(change[0], change[1]); 
                         // store the possible changes
                         if(consistencyHazard[m])
@@ -245,6 +420,371 @@ public class Analyst
      * @return A list of possible Diagnosis for the model
      */
     public Diagnosis[] generateDiagnosis()
+    {
+        generateDiagnosis(diagnosisList::add);
+        return diagnosisList.toArray(new Diagnosis[diagnosisList.size()]);
+    }
+    
+    /**
+     * Generate all possible full diagnosis for this model and give them to a
+     * consumer as soon as they are found (in the same order as generateDiagnosis()
+     * returns them). The diagnoses are not stored in this Analyst, so
+     * printDiagnosis and diagSize do not know about them. Needs
+     * propagateWeights to be done before diagnosis can start.
+     * @param found receives every Diagnosis that is found
+     */
+    public void generateDiagnosis(Consumer<Diagnosis> found)
+    {
+        GraphPath[] paths = pathsToDiagnose();
+        if(paths.length > 0)
+            generateDiagnosis(PartialDiagnosis.EMPTY, paths, 0, found);
+    }
+
+    /**
+     * Get only the best diagnoses for this model (in order of Diagnosis.compareTo,
+     * ie. the start of the list printDiagnosis would print). Uses a best first
+     * search which stops after k diagnoses are found, so it is a lot faster than
+     * generateDiagnosis when there are many diagnoses. Needs propagateWeights
+     * to be done before diagnosis can start.
+     * @param k maximum number of diagnoses to find
+     * @return array with at most k of the best Diagnosis for the model
+     */
+    public Diagnosis[] generateBestDiagnosis(int k)
+    {
+        if(k < 1)
+        {
+            System.err.println("Need to find at least 1 diagnosis");
+            return new Diagnosis[0];
+        }
+        GraphPath[] paths = pathsToDiagnose();
+        diagnosisList.addAll(new BestFirstSearch(this, paths).search(k));
+        return diagnosisList.toArray(new Diagnosis[diagnosisList.size()]);
+    }
+
+    /**
+     * Get all possible full diagnosis for this model as a product of the
+     * diagnoses of independent parts. The paths that need to be solved are
+     * split into groups which share no edges (see components), the diagnoses
+     * of the whole model are all combinations of one diagnosis of every group.
+     * Every group is searched on its own (and not stored in this Analyst),
+     * which is a lot less work than searching all combinations. Needs
+     * propagateWeights to be done before diagnosis can start.
+     * @return DiagnosisProduct with the diagnoses of every group
+     */
+    public DiagnosisProduct generateDiagnosisProduct()
+    {
+        List<GraphPath[]> groups = components(pathsToDiagnose());
+        for(GraphPath[] group : groups)
+        {
+            if(!incidences.containsKey(group))
+                indexPaths(group);
+        }
+        return new DiagnosisProduct(diagnoseComponents(groups));
+    }
+
+    /**
+     * Count all possible full diagnoses for this model without making them.
+     * Walks the same search as generateDiagnosis but only adds up the number
+     * of diagnoses and their sizes, for every independent group of paths
+     * (see components) on its own and combined like DiagnosisProduct. The
+     * counts below a search state are reused by every branch reaching it
+     * (kept in the subproblem cache, see setMemoryBudget). If the
+     * search budget is used up the counts are too low (see isPartial). Needs
+     * propagateWeights to be done before diagnosis can start.
+     * @return DiagnosisCount with the same numbers as the diagnoses of
+     * generateDiagnosis would give
+     */
+    public DiagnosisCount countDiagnoses()
+    {
+        List<GraphPath[]> groups = components(pathsToDiagnose());
+        if(groups.isEmpty())
+            return DiagnosisCount.NONE;
+        SubproblemCache counted = countCache();
+        DiagnosisCount total = DiagnosisCount.ONE;
+        for(GraphPath[] group : groups)
+        {
+            if(!incidences.containsKey(group))
+                indexPaths(group);
+            total = total.times(countDiagnoses(PartialDiagnosis.EMPTY, group, 0,
+                    counted));
+            if(total.getCount().signum() == 0)
+                break; // some group can not be diagnosed
+        }
+        return total;
+    }
+
+    /**
+     * Which edges are the most likely to be faulty: for every edge that is
+     * changed by some diagnosis the number (and fraction) of all diagnoses
+     * which change it, and its change. No diagnosis is made: after counting
+     * (see countDiagnoses) the search states are walked once more in order
+     * of the path they are at, keeping how many ways lead to every state.
+     * An edge chosen at a state is then in that number times the number of
+     * diagnoses below the next state. Every diagnosis which changes an edge
+     * uses the same (combined) change of that edge. Needs propagateWeights to
+     * be done before diagnosis can start.
+     * @return list of EdgeFrequency objects, the most frequent edges first
+     * (equal ones in order of edge id)
+     */
+    public List<EdgeFrequency> edgeFrequencies()
+    {
+        List<EdgeFrequency> out = new ArrayList<>();
+        List<GraphPath[]> groups = components(pathsToDiagnose());
+        if(groups.isEmpty())
+            return out;
+        SubproblemCache counted = countCache();
+        BigInteger[] groupCounts = new BigInteger[groups.size()];
+        BigInteger total = BigInteger.ONE;
+        int maxId = -1;
+        for(int i = 0; i < groups.size(); i++)
+        {
+            GraphPath[] group = groups.get(i);
+            if(!incidences.containsKey(group))
+                indexPaths(group);
+            for(GraphPath gp : group)
+            {
+                for(DEdge de : gp.toEdges())
+                    maxId = Math.max(maxId, de.getID());
+            }
+            groupCounts[i] = countDiagnoses(PartialDiagnosis.EMPTY, group, 0,
+                    counted).getCount();
+            total = total.multiply(groupCounts[i]);
+        }
+        if(total.signum() == 0)
+            return out; // some group can not be diagnosed
+        BigInteger[] byEdge = new BigInteger[maxId + 1];
+        DEdge[] edgeOf = new DEdge[maxId + 1];
+        for(int i = 0; i < groups.size(); i++)
+        {
+            // every diagnosis of a group is combined with all of the others
+            countEdges(groups.get(i), total.divide(groupCounts[i]), counted,
+                    byEdge, edgeOf);
+        }
+        for(int id = 0; id <= maxId; id++)
+        {
+            if(byEdge[id] != null && byEdge[id].signum() > 0)
+                out.add(new EdgeFrequency(edgeOf[id], byEdge[id], total,
+                        combinedLowerb(edgeOf[id]), combinedUpperb(edgeOf[id])));
+        }
+        out.sort((a, b) -> b.getCount().compareTo(a.getCount())); // stable
+        return out;
+    }
+
+    /* Search state reached by some number of ways from the start of the search
+    (one diagnosis reaching it to continue from) */
+    private static class Reach
+    {
+        final PartialDiagnosis diag;
+        BigInteger ways;
+
+        Reach(PartialDiagnosis d, BigInteger w)
+        {
+            diag = d;
+            ways = w;
+        }
+    }
+
+    /* Adds the number of diagnoses of a group of paths changing an edge to
+    byEdge (by edge id, edgeOf keeps the edges), every diagnosis counted factor
+    times. Walks the states of the search one path at a time, only those
+    with diagnoses below them (the counts of countDiagnoses) */
+    private void countEdges(GraphPath[] paths, BigInteger factor,
+            SubproblemCache counted, BigInteger[] byEdge, DEdge[] edgeOf)
+    {
+        Map<SubproblemCache.State, Reach> states = new HashMap<>();
+        reach(PartialDiagnosis.EMPTY, factor, paths, 0, states);
+        for(int current = 0; current < paths.length && !isPartial(); current++)
+        {
+            GraphPath path = paths[current];
+            boolean lastPath = current == paths.length - 1;
+            Map<SubproblemCache.State, Reach> nextStates = new HashMap<>();
+            for(Reach r : states.values())
+            {
+                if(r.diag.edgeUsed(path))
+                {
+                    if(!lastPath && canComplete(r.diag, paths, current) &&
+                            countDiagnoses(r.diag, paths, current + 1,
+                            counted).getCount().signum() > 0)
+                        reach(r.diag, r.ways, paths, current + 1, nextStates);
+                    continue;
+                }
+                for(DEdge edge : path.toEdges())
+                {
+                    if(usedBefore(edge, paths, current) || !combinable(edge))
+                        continue;
+                    PartialDiagnosis next = r.diag.add(edge, combinedLowerb(edge),
+                            combinedUpperb(edge));
+                    BigInteger below = BigInteger.ONE;
+                    if(!lastPath)
+                    {
+                        if(!canComplete(next, paths, current))
+                            continue;
+                        below = countDiagnoses(next, paths, current + 1,
+                                counted).getCount();
+                        if(below.signum() == 0)
+                            continue;
+                        reach(next, r.ways, paths, current + 1, nextStates);
+                    }
+                    int id = edge.getID();
+                    BigInteger ways = r.ways.multiply(below);
+                    byEdge[id] = byEdge[id] == null ? ways : byEdge[id].add(ways);
+                    edgeOf[id] = edge;
+                }
+            }
+            states = nextStates;
+        }
+    }
+
+    /* Adds ways of reaching the state of diag at path current to states */
+    private void reach(PartialDiagnosis diag, BigInteger ways, GraphPath[] paths,
+            int current, Map<SubproblemCache.State, Reach> states)
+    {
+        SubproblemCache.State state = new SubproblemCache.State(paths, current,
+                solvedFrom(diag, paths, current));
+        Reach r = states.get(state);
+        if(r == null)
+            states.put(state, new Reach(diag, ways));
+        else
+            r.ways = r.ways.add(ways);
+    }
+
+    /**
+     * Underlying countDiagnoses method, the counting version of the recursive
+     * generateDiagnosis
+     * @param diag diagnosis that solves all paths before current
+     * @param paths all paths that need to be solved (indexed, see indexPaths)
+     * @param current index of the path to solve
+     * @param counted counts of the search states done so far
+     * @return DiagnosisCount of the changes added below diag (to complete it)
+     */
+    protected DiagnosisCount countDiagnoses(PartialDiagnosis diag, GraphPath[] paths,
+            int current, SubproblemCache counted)
+    {
+        SubproblemCache.State state = new SubproblemCache.State(paths, current,
+                solvedFrom(diag, paths, current));
+        DiagnosisCount out = counted.getCount(state);
+        if(out != null)
+            return out;
+        out = DiagnosisCount.NONE;
+        if(!enterNode())
+            return out;
+        GraphPath path = paths[current];
+        boolean lastPath = current == paths.length - 1;
+        if(!diag.edgeUsed(path))
+        {
+            for(DEdge edge : path.toEdges())
+            {
+                if(usedBefore(edge, paths, current) || !combinable(edge))
+                    continue;
+                int width = combinedUpperb(edge) - combinedLowerb(edge);
+                if(lastPath)
+                {
+                    out = out.plus(DiagnosisCount.ONE.withChange(width));
+                    continue;
+                }
+                PartialDiagnosis next = diag.add(edge, combinedLowerb(edge),
+                        combinedUpperb(edge));
+                if(canComplete(next, paths, current))
+                    out = out.plus(countDiagnoses(next, paths, current + 1,
+                            counted).withChange(width));
+            }
+        }
+        else if(lastPath)
+            out = DiagnosisCount.ONE;
+        else if(canComplete(diag, paths, current))
+            out = countDiagnoses(diag, paths, current + 1, counted);
+        if(!isPartial())
+            counted.putCount(state, out); // only complete subtrees
+        return out;
+    }
+
+    /* Cache for the counts of the search states (states no longer needed are
+    removed when it is full, they are counted again if they are reached) */
+    private SubproblemCache countCache()
+    {
+        return subproblems != null ? subproblems : new SubproblemCache(COUNT_MEMORY);
+    }
+
+    /**
+     * Split paths into groups which do not share edges with each other, the
+     * groups are connected components of the paths sharing an edge. The
+     * order of the paths in the groups is their order in paths.
+     * @param paths array of GraphPath objects, indexed by the incidences of
+     * pathsToDiagnose
+     * @return list with the groups in order of their first path
+     */
+    protected List<GraphPath[]> components(GraphPath[] paths)
+    {
+        PathIncidence incidence = incidences.get(paths);
+        int[] parent = new int[paths.length]; // union find
+        for(int i = 0; i < paths.length; i++)
+            parent[i] = i;
+        for(int i = 0; i < paths.length; i++)
+        {
+            for(DEdge edge : paths[i].toEdges())
+            {
+                int first = incidence.pathsOf(edge).nextSetBit(0);
+                int a = root(parent, i);
+                int b = root(parent, first);
+                if(a != b)
+                    parent[Math.max(a, b)] = Math.min(a, b);
+            }
+        }
+        Map<Integer, List<GraphPath>> groups = new LinkedHashMap<>();
+        for(int i = 0; i < paths.length; i++)
+        {
+            int r = root(parent, i);
+            if(!groups.containsKey(r))
+                groups.put(r, new ArrayList<>());
+            groups.get(r).add(paths[i]);
+        }
+        List<GraphPath[]> out = new ArrayList<>();
+        if(groups.size() == 1)
+        {
+            out.add(paths); // one group, keep the indexed array
+            return out;
+        }
+        for(List<GraphPath> group : groups.values())
+            out.add(group.toArray(new GraphPath[group.size()]));
+        return out;
+    }
+    
+    private static int root(int[] parent, int i)
+    {
+        while(parent[i] != i)
+        {
+            parent[i] = parent[parent[i]]; // path halving
+            i = parent[i];
+        }
+        return i;
+    }
+    
+    /**
+     * Search the diagnoses of independent groups of paths (see components).
+     * The incidences of the groups need to be built.
+     * @param groups list of path arrays
+     * @return list with for every group an array of its diagnoses
+     */
+    protected List<Diagnosis[]> diagnoseComponents(List<GraphPath[]> groups)
+    {
+        List<Diagnosis[]> out = new ArrayList<>();
+        for(GraphPath[] group : groups)
+        {
+            List<Diagnosis> found = new ArrayList<>();
+            generateDiagnosis(PartialDiagnosis.EMPTY, group, 0, found::add);
+            out.add(found.toArray(new Diagnosis[found.size()]));
+        }
+        return out;
+    }
+    
+    /**
+     * The paths that need to be solved by a diagnosis, in the order in which
+     * the diagnosis search handles them (see setPathOrdering). Also indexes
+     * these paths (see indexPaths) and starts the search budget. Needs 
+     * propagateWeights to be done.
+     * @return array with GraphPath objects
+     */
+    protected GraphPath[] pathsToDiagnose()
     {
         LinkedList<GraphPath> needDiag = new LinkedList<>();
         // First repair possible inconsistent observations
@@ -286,94 +826,305 @@ public class Analyst
          * CHECK: if no fix is needed the values shouldnt be allowed to change!!
          * Is it caught with the [0,0] bounds added to the edges of that observ.?
          */
-        generateDiagnosis(new Diagnosis(), needDiag, new ArrayList<>());
-        return diagnosisList.toArray(new Diagnosis[diagnosisList.size()]);
+        GraphPath[] paths = pathOrdering.order(
+                needDiag.toArray(new GraphPath[needDiag.size()]), this::combinable);
+        incidences.clear();
+        forwardChecks.clear();
+        if(subproblems != null)
+            subproblems.clear(); // changes might be different now
+        if(budget != null)
+            budget.start();
+        indexPaths(paths);
+        return paths;
     }
     
-    /* Underlying generateDiagnosis method used to recursively traverse the tree
-     * of problem edges */ 
-    private void generateDiagnosis(Diagnosis diagOriginal, LinkedList<GraphPath> wronglyPredicted, ArrayList<GraphPath> testedPaths)
+    /**
+     * Build the lookups of the diagnosis search for an array of paths: the
+     * incidence (used by usedBefore) and the forward check (used by
+     * canComplete). Needs to be done before the search (not thread safe).
+     * @param paths array of GraphPath objects in search order
+     */
+    protected void indexPaths(GraphPath[] paths)
     {
-        if(wronglyPredicted.isEmpty())
+        PathIncidence incidence = new PathIncidence(paths);
+        incidences.put(paths, incidence);
+        forwardChecks.put(paths, new ForwardCheck(paths, incidence, this::combinable));
+    }
+    
+    /**
+     * Underlying generateDiagnosis method used to recursively traverse the tree
+     * of problem edges. The diagnosis is shared with the other branches so
+     * only found diagnoses are copied to the found list.
+     * @param diagOriginal diagnosis that solves all paths before current
+     * @param paths all paths that need to be solved (see pathsToDiagnose)
+     * @param current index of the path to solve, all paths before it have
+     * been tested
+     * @param found receives the full diagnoses (in order)
+     */
+    protected void generateDiagnosis(PartialDiagnosis diagOriginal, GraphPath[] paths,
+            int current, Consumer<Diagnosis> found)
+    {
+        if(subproblems != null)
+        {
+            cachedSearch(diagOriginal, paths, current, found);
             return;
-        GraphPath path = wronglyPredicted.pop();    
-        testedPaths.add(path);
+        }
+        if(!enterNode())
+            return;
+        GraphPath path = paths[current];
+        boolean lastPath = current == paths.length - 1;
         if(!diagOriginal.edgeUsed(path)) // if path is not solved try to solve it
         {
             // ie. if in the current diagnosis an edge has already been solved on the current path
-            for(int i = 1; i < path.stepSize(); i++)
+            for(DEdge edge : path.toEdges())  // for EACH edge on this path!
             {
-                DEdge edge = path.getStepE(i);  // for EACH edge on this path!
-                Diagnosis diag = diagOriginal.copy(); // new Diagnosis
-
-                //check if edge is part of any of the testedPaths, if so 
+                //check if edge is part of any of the tested paths, if so 
                 // it can't be used
-                boolean alreadyUsed = false;
-                if(!testedPaths.isEmpty())
+                if(usedBefore(edge, paths, current))
+                    continue;
+                // if combine possible
+                if(combinable(edge))
                 {
-                    for(int j = 0; j < testedPaths.size()-1;j++) // shouldnt check the last added Path (ie. the current Path!!)
-                    {
-                        GraphPath p = testedPaths.get(j);
-                        if(p.edgeUsed(edge))
-                            alreadyUsed = true; // can't use this edge in current diagnosis 
-                    }                           // already part of solved path
+                    PartialDiagnosis diag = diagOriginal.add(edge, 
+                            combinedLowerb(edge), combinedUpperb(edge));
+                    if(lastPath)
+                        found.accept(diag.toDiagnosis());
+                    else if(canComplete(diag, paths, current))
+                        generateDiagnosis(diag, paths, current + 1, found);
                 }
-                if(alreadyUsed)
-                {
+            }
+        }
+        else // apparently path was already solved
+        {   // continue as if it was solved
+            if(lastPath)
+                found.accept(diagOriginal.toDiagnosis());
+            else if(canComplete(diagOriginal, paths, current))
+                generateDiagnosis(diagOriginal, paths, current + 1, found);
+        }
+    }
+    
+    /* Same search as generateDiagnosis with the subproblem cache: gives the
+    diagnoses below diag to found and returns the edges added below diag for
+    every one of them, or null if there are more than memoLimit (only then the
+    state is stored). Stored states are given out without searching */
+    private List<DEdge[]> cachedSearch(PartialDiagnosis diag, GraphPath[] paths,
+            int current, Consumer<Diagnosis> found)
+    {
+        if(isPartial())
+            return null; // stopped, also no stored subtrees
+        SubproblemCache.State state = new SubproblemCache.State(paths, current,
+                solvedFrom(diag, paths, current));
+        List<DEdge[]> out = subproblems.get(state);
+        if(out != null)
+        {
+            for(DEdge[] suffix : out)
+            {
+                PartialDiagnosis full = diag;
+                for(DEdge edge : suffix)
+                    full = full.add(edge, combinedLowerb(edge), combinedUpperb(edge));
+                found.accept(full.toDiagnosis());
+            }
+            return out;
+        }
+        if(!enterNode())
+            return null;
+        out = new ArrayList<>();
+        GraphPath path = paths[current];
+        boolean lastPath = current == paths.length - 1;
+        if(!diag.edgeUsed(path))
+        {
+            for(DEdge edge : path.toEdges())
+            {
+                if(usedBefore(edge, paths, current) || !combinable(edge))
                     continue;
-                }
-                // if combine possible
-                boolean combine = true;
-                ArrayList<int[]> changes = edge.getPossibleChanges();
-                int[] finalchng = changes.remove(changes.size()-1); // lets start with the last added bounds
-                for(int[] bounds : changes)
+                PartialDiagnosis next = diag.add(edge, combinedLowerb(edge), 
+                        combinedUpperb(edge));
+                if(lastPath)
                 {
-                    if((bounds[0] > finalchng[1])||(bounds[1] < finalchng[0]))
-                    {
-                        combine = false;
-                        break;
-                    }
-                    else
-                    {
-                        if(bounds[0] > finalchng[0])
-                            finalchng[0] = bounds[0];
-                        if(bounds[1] < finalchng[1])
-                            finalchng[1] = bounds[1];
-                    }
+                    found.accept(next.toDiagnosis());
+                    out = collect(out, new DEdge[] {edge});
                 }
-                if(combine)
+                else if(canComplete(next, paths, current))
                 {
-                    diag.addPartial(edge, finalchng[0], finalchng[1]);
-                    if(wronglyPredicted.isEmpty())
-                        diagnosisList.add(diag);
-                    else
+                    List<DEdge[]> below = cachedSearch(next, paths, current + 1, found);
+                    if(below == null)
+                        out = null; // too many to store
+                    for(int i = 0; out != null && i < below.size(); i++)
                     {
-                        LinkedList<GraphPath> newWP = new LinkedList<>();
-                        for(GraphPath gp: wronglyPredicted)
-                            newWP.add(gp);
-                        ArrayList<GraphPath> newTP = new ArrayList<>();
-                        for(GraphPath g : testedPaths)
-                            newTP.add(g);
-                        generateDiagnosis(diag, newWP, newTP);
+                        DEdge[] suffix = below.get(i);
+                        DEdge[] longer = new DEdge[suffix.length + 1];
+                        longer[0] = edge;
+                        System.arraycopy(suffix, 0, longer, 1, suffix.length);
+                        out = collect(out, longer);
                     }
                 }
             }
         }
-        else // apparently path was already solved
-        {   // continue as if it was solved
-            if(wronglyPredicted.isEmpty())
-                        diagnosisList.add(diagOriginal.copy());
-            else
+        else if(lastPath)
+        {
+            found.accept(diag.toDiagnosis());
+            out.add(new DEdge[0]);
+        }
+        else if(canComplete(diag, paths, current))
+            out = cachedSearch(diag, paths, current + 1, found);
+        if(out != null && !isPartial())
+            subproblems.put(state, out); // only complete subtrees
+        return out;
+    }
+    
+    /* Adds a suffix to out, null if out is null or gets too large */
+    private List<DEdge[]> collect(List<DEdge[]> out, DEdge[] suffix)
+    {
+        if(out == null || out.size() >= memoLimit)
+            return null;
+        out.add(suffix);
+        return out;
+    }
+    
+    /* Which of the paths from current on are solved by diag */
+    private BitSet solvedFrom(PartialDiagnosis diag, GraphPath[] paths, int current)
+    {
+        BitSet solved = new BitSet(paths.length);
+        PathIncidence incidence = incidences.get(paths);
+        if(incidence != null)
+        {
+            for(DEdge edge : diag.getEdges())
+                solved.or(incidence.pathsOf(edge));
+            solved.clear(0, current);
+        }
+        else
+        {
+            for(int j = current; j < paths.length; j++)
+            {
+                if(diag.edgeUsed(paths[j]))
+                    solved.set(j);
+            }
+        }
+        return solved;
+    }
+    
+    /**
+     * The diagnoses on the next level of the search tree, in the order in
+     * which generateDiagnosis visits them. Used by the search engines which
+     * do not go depth first.
+     * @param diag diagnosis that solves all paths before current
+     * @param paths all paths that need to be solved (see pathsToDiagnose)
+     * @param current index of the path to solve
+     * @return list with diag itself if it solves paths[current] already, 
+     * otherwise a new diagnosis for every edge that can solve it (without
+     * the ones that can not be completed, see canComplete), empty if the
+     * search budget is used up
+     */
+    protected List<PartialDiagnosis> branches(PartialDiagnosis diag, GraphPath[] paths,
+            int current)
+    {
+        List<PartialDiagnosis> next = new ArrayList<>();
+        if(!enterNode())
+            return next;
+        GraphPath path = paths[current];
+        if(diag.edgeUsed(path))
+        {
+            if(canComplete(diag, paths, current))
+                next.add(diag); // already solved
+            return next;
+        }
+        for(DEdge edge : path.toEdges())
+        {
+            if(usedBefore(edge, paths, current))
+                continue;
+            if(combinable(edge))
             {
-                LinkedList<GraphPath> newWP = new LinkedList<>();
-                for(GraphPath gp: wronglyPredicted)
-                    newWP.add(gp);
-                ArrayList<GraphPath> newTP = new ArrayList<>();
-                for(GraphPath g : testedPaths)
-                    newTP.add(g);
-                generateDiagnosis(diagOriginal.copy(), newWP, newTP);
+                PartialDiagnosis option = diag.add(edge, combinedLowerb(edge),
+                        combinedUpperb(edge));
+                if(canComplete(option, paths, current))
+                    next.add(option);
             }
         }
+        return next;
+    }
+    
+    /**
+     * Called for every node of a diagnosis search, counts it and spends the
+     * budget (see setSearchBudget)
+     * @return false if the search has to stop
+     */
+    protected boolean enterNode()
+    {
+        searchNodes.increment();
+        return budget == null || budget.spend();
+    }
+    
+    /**
+     * Forward check after solving a path: can all later paths still be solved
+     * by the diagnosis. Every edge that can be added later is on one of the
+     * paths after current (see ForwardCheck), a path without such edges which
+     * is not solved yet ends the branch.
+     * @param diag diagnosis that solves all paths up to and including current
+     * @param paths all paths that need to be solved
+     * @param current index of the path that was just solved
+     * @return false if some later path can not be solved anymore
+     */
+    protected boolean canComplete(PartialDiagnosis diag, GraphPath[] paths, int current)
+    {
+        if(!forwardChecking)
+            return true;
+        ForwardCheck check = forwardChecks.get(paths);
+        if(check == null || check.deadPath(diag, paths, current) < 0)
+            return true;
+        prunedBranches.increment();
+        return false;
+    }
+    
+    /**
+     * Is an edge part of any of the paths before paths[current], if so it can
+     * not be changed by a diagnosis for paths[current]
+     * @param edge DEdge object on paths[current]
+     * @param paths all paths that need to be solved
+     * @param current index of the path being solved
+     * @return true if the edge is on an earlier path
+     */
+    protected boolean usedBefore(DEdge edge, GraphPath[] paths, int current)
+    {
+        PathIncidence incidence = incidences.get(paths);
+        if(incidence != null)
+            return incidence.usedBefore(edge, current);
+        for(int j = 0; j < current; j++) // shouldnt check the current Path
+        {
+            if(paths[j].edgeUsed(edge))
+                return true; // can't use this edge in current diagnosis 
+        }                    // already part of solved path
+        return false;
+    }
+    
+    /**
+     * Can the possible changes stored in some edge be combined into a single
+     * change. Used by the diagnosis search, subclasses can use other changes.
+     * @param edge DEdge object on a path that needs diagnosis
+     * @return true if there is a change that fixes all paths of the edge
+     */
+    protected boolean combinable(DEdge edge)
+    {
+        return edge.changesCombine();
+    }
+    
+    /**
+     * Lower bound on the combined change of an edge (see combinable)
+     * @param edge DEdge object on a path that needs diagnosis
+     * @return integer with the lower bound on the change
+     */
+    protected int combinedLowerb(DEdge edge)
+    {
+        return edge.getCombinedLowerb();
+    }
+    
+    /**
+     * Upper bound on the combined change of an edge (see combinable)
+     * @param edge DEdge object on a path that needs diagnosis
+     * @return integer with the upper bound on the change
+     */
+    protected int combinedUpperb(DEdge edge)
+    {
+        return edge.getCombinedUpperb();
     }
     
     /**
@@ -381,6 +1132,21 @@ public class Analyst
      * @return ConDiagnosis object array 
      */
     public ConDiagnosis[] generateConDiagnosis()
+    {
+        return generateConDiagnosis(-1);
+    }
+    
+    /**
+     * Generate the consistency based diagnoses (without fault model) up to some
+     * size. Every wrongly predicted path is a conflict: one of its edges which
+     * is not on a correctly predicted path must be faulty. The diagnoses are the
+     * minimal hitting sets of these conflicts (see HittingSetTree), so no
+     * diagnosis contains another one.
+     * @param maxSize largest number of faulty edges in a diagnosis (smaller
+     * than 0 for no limit)
+     * @return ConDiagnosis object array, ordered on size
+     */
+    public ConDiagnosis[] generateConDiagnosis(int maxSize)
     {
         LinkedList<GraphPath> fDiagnoses = new LinkedList();
         LinkedList<GraphPath> tDiagnoses = new LinkedList();
@@ -400,91 +1166,37 @@ public class Analyst
             }
         }
         System.out.println("False diagnoses: " + fDiagnoses.size());
+        if(fDiagnoses.isEmpty())
+            return new ConDiagnosis[0];
         ConDiagnosis empty = new ConDiagnosis();
         for(GraphPath truePath : tDiagnoses)
         {
-            for(int i = 1; i < truePath.stepSize(); i++)
-                empty.addCorrectEdge(truePath.getStepE(i));
+            for(DEdge edge : truePath.toEdges())
+                empty.addCorrectEdge(edge);
         }
-        LinkedList<ConDiagnosis> conDiagnoses = generateConDiagnosis(empty,
-                fDiagnoses, new LinkedList());
-        // then loop trough all possibilities!
-        // How ? -> zelfde manier als normale generateDiag...
-        
-        return conDiagnoses.toArray(new ConDiagnosis[conDiagnoses.size()]);
-    }
-    
-    /* Underlying generateConDiagnosis method used to recursively traverse the 
-    tree of problem edges for a consistency based diagnosis */ 
-    private LinkedList<ConDiagnosis> generateConDiagnosis(ConDiagnosis conDiagOri, 
-            LinkedList<GraphPath> faultyPaths , LinkedList<GraphPath> testedPaths)
-    {
-        LinkedList<ConDiagnosis> allFullDiag = new LinkedList();
-        if(faultyPaths.isEmpty())
-            return allFullDiag;
-        GraphPath path = faultyPaths.pop();    
-        testedPaths.add(path); // lost of paths that are already solved!
-        
-        if(!conDiagOri.pathSolved(path)) // if path is not solved try to solve it
+        HittingSetTree tree = new HittingSetTree();
+        for(GraphPath falsePath : fDiagnoses)
         {
-            // ie. if in the current diagnosis an edge has already been solved on the current path
-            for(int i = 1; i < path.stepSize(); i++)
+            ArrayList<DEdge> conflict = new ArrayList<>();
+            for(DEdge edge : falsePath.toEdges())
             {
-                DEdge edge = path.getStepE(i);  // for EACH edge on this path!
-                ConDiagnosis condiag = conDiagOri.copy(); // new Diagnosis
-
-                //check if edge is part of any of the testedPaths, if so 
-                // it can't be used
-                boolean alreadySolved = false;
-                if(!testedPaths.isEmpty())
-                {
-                    for(int j = 0; j < testedPaths.size()-1;j++) // shouldnt check the last added Path (ie. the current Path!!)
-                    {
-                        GraphPath p = testedPaths.get(j);
-                        if(p.edgeUsed(edge))
-                            alreadySolved = true; // can't use this edge in current diagnosis 
-                    }                           // already part of solved path
-                }
-                if(alreadySolved)
-                    continue;
-                if(condiag.edgeCorrect(edge) || condiag.edgeSolved(edge))
-                    continue;
-                
-                condiag.addFaultyEdge(edge);
-                if(faultyPaths.isEmpty())
-                    allFullDiag.add(condiag);
-                else
-                {
-                    LinkedList<GraphPath> newWP = new LinkedList<>();
-                    for(GraphPath gp: faultyPaths)
-                        newWP.add(gp);
-                    LinkedList<GraphPath> newTP = new LinkedList<>();
-                    for(GraphPath g : testedPaths)
-                        newTP.add(g);
-                    LinkedList<ConDiagnosis> out = generateConDiagnosis(condiag, newWP, newTP);
-                    for(ConDiagnosis cd : out)
-                        allFullDiag.add(cd);
-                }
+                if(!empty.edgeCorrect(edge))
+                    conflict.add(edge);
             }
+            tree.addConflict(conflict);
         }
-        else // apparently path was already solved
-        {   // continue as if it was solved
-            if(faultyPaths.isEmpty())
-                allFullDiag.add(conDiagOri.copy());
-            else
-            {
-                LinkedList<GraphPath> newWP = new LinkedList<>();
-                for(GraphPath gp: faultyPaths)
-                    newWP.add(gp);
-                LinkedList<GraphPath> newTP = new LinkedList<>();
-                for(GraphPath g : testedPaths)
-                    newTP.add(g);
-                LinkedList<ConDiagnosis> out = generateConDiagnosis(conDiagOri.copy(), newWP, newTP);
-                for(ConDiagnosis cd : out)
-                    allFullDiag.add(cd);
-            }
+        if(budget != null)
+            budget.start();
+        List<DEdge[]> hittingSets = tree.minimalHittingSets(maxSize, this::enterNode);
+        ConDiagnosis[] conDiagnoses = new ConDiagnosis[hittingSets.size()];
+        for(int i = 0; i < conDiagnoses.length; i++)
+        {
+            ConDiagnosis condiag = empty.copy();
+            for(DEdge edge : hittingSets.get(i))
+                condiag.addFaultyEdge(edge);
+            conDiagnoses[i] = condiag;
         }
-        return allFullDiag;
+        return conDiagnoses;
     }
     
     /**
@@ -570,6 +1282,69 @@ public class Analyst
         }
     }
     
+    /**
+     * Estimates the number of paths of every observation without generating 
+     * them (see PathCountEstimator). Exact if the graph between the start and
+     * end of an observation has no cycles, otherwise an upper bound. Can be 
+     * used before generatePaths to reject or change too large problems.
+     * @return Map with an estimate for every observation (in order)
+     */
+    public Map<Observation, PathCountEstimator.Estimate> estimatePaths()
+    {
+        FrozenGraph fg = graph.freeze();
+        PathCountEstimator estimator = new PathCountEstimator(fg);
+        Map<Observation, PathCountEstimator.Estimate> estimates = new LinkedHashMap<>();
+        for(Observation ob : observations)
+            estimates.put(ob, estimator.count(fg.indexOf(ob.startV), fg.indexOf(ob.endV)));
+        return estimates;
+    }
+    
+    /**
+     * Number of nodes the diagnosis searches of this analyst visited (a node is
+     * a partial diagnosis for which the next path is handled)
+     * @return long
+     */
+    public long getSearchNodes()
+    {
+        return searchNodes.sum();
+    }
+    
+    /**
+     * Number of branches of the diagnosis searches that were cut by forward
+     * checking (see setForwardChecking), every one is a subtree without any
+     * diagnoses
+     * @return long
+     */
+    public long getPrunedBranches()
+    {
+        return prunedBranches.sum();
+    }
+    
+    /**
+     * Rough upper bound on the size of the search tree of generateDiagnosis. 
+     * Assumes every path is predicted wrong, every level of the tree handles
+     * one path and branches on every edge of that path (of mean length).
+     * @return log10 of the estimated number of nodes, can be infinite
+     */
+    public double estimateSearchTree()
+    {
+        double paths = 0;
+        double length = 0;
+        for(PathCountEstimator.Estimate e : estimatePaths().values())
+        {
+            double p = e.paths.doubleValue();
+            paths += p;
+            length += p * e.meanLength;
+        }
+        if(paths == 0)
+            return 0; // only the root
+        double mean = length / paths;
+        if(mean <= 1)
+            return Math.log10(paths + 1);
+        // sum_{i=0}^{paths} mean^i
+        return paths * Math.log10(mean) + Math.log10(mean / (mean - 1));
+    }
+    
     /**
      * Number of diagnoses answer intervals
      * @return Integer with number of output lines, each representing an interval
@@ -579,37 +1354,17 @@ public class Analyst
         return diagnosisList.size();
     }
     
-    /* Simple method for generating all the paths for some observation given 
-    some traversed path. Stores them to obsPaths */
-    private void simplePaths(GraphPath graphPath, Observation obs)
+    /* Stores a path found for some observation to obsPaths */
+    private void storePath(Observation obs, GraphPath path)
     {
         // need to create new set for each new observation!
-        LinkedHashSet<DEdge> edgeExp = graph.possibleEdges(graphPath.getLastV());
-        if(edgeExp == null || (edgeExp.size() < 1))
-            return; // dead end!
-        for(DEdge de : edgeExp)
+        LinkedHashSet<GraphPath> paths = obsPaths.get(obs);
+        if(paths == null) 
         {
-            if(de.getEnd().equals(obs.endV)) // end of edge equals end of observation ie. path is correct!
-            {
-                graphPath.addStep(de, de.getEnd());
-                // SAVE
-                LinkedHashSet<GraphPath> paths = obsPaths.get(obs);
-                if(paths == null) 
-                {
-                    paths = new LinkedHashSet();
-                    obsPaths.put(obs, paths);
-                }
-                paths.add(graphPath.copy()); // save A COPY!
-                
-                graphPath.removeLast();
-            }
-            else if(!graphPath.edgeUsed(de)) // Edge has not been used yet
-            {
-                graphPath.addStep(de, de.getEnd());
-                simplePaths(graphPath, obs); // use it!
-                graphPath.removeLast();
-            }
+            paths = new LinkedHashSet();
+            obsPaths.put(obs, paths);
         }
+        paths.add(path);
     }
     
     /**
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2016 Frans van den Heuvel.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package diag.stn.analyze;
+
+import diag.stn.STN.DEdge;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Best first (branch and bound) version of the diagnosis search of the
+ * Analyst. Partial diagnoses are searched in order of a lower bound on the
+ * number of changed edges of the full diagnoses below them, so the full
+ * diagnoses come out in the order of Diagnosis.compareTo and the search can
+ * stop after the best few.
+ * The lower bound is the size of the partial diagnosis plus the number of
+ * unsolved paths which do not share an edge with each other (each of those
+ * needs its own changed edge). Full diagnoses of the same size are ordered on
+ * their change tally and then on the order in which the Analyst finds them,
+ * so the result is the same as the start of the sorted Analyst result.
+ * @author Frans van den Heuvel
+ */
+class BestFirstSearch
+{
+    private final Analyst analyst;
+    private final GraphPath[] paths;
+    private final boolean comparable; // all paths use ids of one graph
+
+    /* Node of the search, a full diagnosis if next == paths.length */
+    private static class Node
+    {
+        final PartialDiagnosis diag;
+        final int next;        // index of the next path to solve
+        final int[] branch;    // branch taken on every level (search order)
+        final int bound;       // lower bound on the size of a full diagnosis
+        final int tally;       // change tally of a full diagnosis
+        final Diagnosis full;
+
+        Node(PartialDiagnosis d, int n, int[] b, int bnd, Diagnosis f)
+        {
+            diag = d;
+            next = n;
+            branch = b;
+            bound = bnd;
+            full = f;
+            // a partial diagnosis may still lead to any tally
+            tally = f == null ? Integer.MAX_VALUE : f.chngtally();
+        }
+    }
+
+    /**
+     * Create a search over the paths of some analyst
+     * @param a Analyst which decides which edges can be changed
+     * @param p all paths that need to be solved (see pathsToDiagnose)
+     */
+    BestFirstSearch(Analyst a, GraphPath[] p)
+    {
+        analyst = a;
+        paths = p;
+        boolean same = true;
+        DEdge ref = null;
+        for(GraphPath path : p)
+        {
+            if(path.stepSize() < 2)
+                continue;
+            if(ref == null)
+                ref = path.getStepE(1);
+            if(!path.idsFrom(ref))
+                same = false;
+        }
+        comparable = same;
+    }
+
+    /**
+     * Find the best diagnoses
+     * @param k maximum number of diagnoses
+     * @return list with at most k diagnoses in order of Diagnosis.compareTo
+     * (if the search budget runs out, the best ones found before that)
+     */
+    List<Diagnosis> search(int k)
+    {
+        List<Diagnosis> found = new ArrayList<>();
+        if(paths.length == 0)
+            return found;
+        PriorityQueue<Node> queue = new PriorityQueue<>(BestFirstSearch::compare);
+        queue.add(new Node(PartialDiagnosis.EMPTY, 0, new int[0],
+                lowerBound(PartialDiagnosis.EMPTY, 0), null));
+        while(!queue.isEmpty() && found.size() < k && !analyst.isPartial())
+        {
+            Node node = queue.poll();
+            if(node.full != null)
+            {
+                // no partial diagnosis left which can lead to a better one
+                found.add(node.full);
+                continue;
+            }
+            List<PartialDiagnosis> next = analyst.branches(node.diag, paths, node.next);
+            for(int i = 0; i < next.size(); i++)
+            {
+                PartialDiagnosis d = next.get(i);
+                int[] branch = new int[node.branch.length + 1];
+                System.arraycopy(node.branch, 0, branch, 0, node.branch.length);
+                branch[node.branch.length] = i;
+                if(node.next + 1 == paths.length)
+                    queue.add(new Node(d, paths.length, branch, d.size(),
+                            d.toDiagnosis()));
+                else
+                    queue.add(new Node(d, node.next + 1, branch,
+                            lowerBound(d, node.next + 1), null));
+            }
+        }
+        return found;
+    }
+
+    /* Size of the diagnosis plus a set of unsolved paths from current on
+    which share no edges (greedy, in path order) */
+    private int lowerBound(PartialDiagnosis diag, int current)
+    {
+        int bound = diag.size();
+        if(!comparable)
+            return bound;
+        BitSet taken = new BitSet();
+        for(int j = current; j < paths.length; j++)
+        {
+            BitSet ids = paths[j].edgeIdSet();
+            if(!taken.intersects(ids) && !diag.edgeUsed(paths[j]))
+            {
+                taken.or(ids);
+                bound++;
+            }
+        }
+        return bound;
+    }
+
+    /* Size (bound), then highest tally, then search order */
+    private static int compare(Node a, Node b)
+    {
+        if(a.bound != b.bound)
+            return a.bound < b.bound ? -1 : 1;
+        if(a.tally != b.tally)
+            return a.tally > b.tally ? -1 : 1;
+        int n = Math.min(a.branch.length, b.branch.length);
+        for(int i = 0; i < n; i++)
+        {
+            if(a.branch[i] != b.branch[i])
+                return a.branch[i] < b.branch[i] ? -1 : 1;
+        }
+        return Integer.compare(a.branch.length, b.branch.length);
+    }
+}
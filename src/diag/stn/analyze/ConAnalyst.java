@@ -19,10 +19,7 @@ import diag.stn.DiagSTN;
 import diag.stn.STN.DEdge;
 import diag.stn.STN.Graph;
 import diag.stn.STN.Observation;
-import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.LinkedHashSet;
-import java.util.LinkedList;
 
 /**
  * Analyst for consistency based diagnosis with the use of a fault model similar
@@ -80,12 +77,8 @@ public class ConAnalyst extends Analyst
                         lb = 0;
                         ub = 0;
                     }
-                    for(int i=1; i < paths[j].stepSize(); i++)
-                    {
-                        DEdge de = paths[j].getStepE(i);
-                        lb += de.getLowerb();
-                        ub += de.getUpperb();
-                    }
+                    lb += paths[j].sumLowerb(); // O(1) for stored paths
+                    ub += paths[j].sumUpperb();
                     int[] lbub = new int[2];
                     lbub[0] = lb;
                     lbub[1] = ub;
@@ -132,9 +125,8 @@ public class ConAnalyst extends Analyst
                         o.fixneeded = true;
                     
                     diffStore.put(paths[m], change.clone());
-                    for(int n=1; n < paths[m].stepSize(); n++)
+                    for(DEdge de : paths[m].toEdges())
                     {
-                        DEdge de = paths[m].getStepE(n);
                         de.addPossibleConChange(change[0], change[1]); 
                         // store the possible changes
                     }
@@ -148,140 +140,26 @@ public class ConAnalyst extends Analyst
         }
     }
     
-     /**
-     * Get a list of all possible full diagnosis for this model. Needs propagateWeights
-     * to be done before diagnosis can start.
-     * @return A list of possible Diagnosis for the model
+    /**
+     * Consistency based diagnosis uses the consistency based changes.
+     * @param edge DEdge object on a path that needs diagnosis
+     * @return true if there is a change that fixes all paths of the edge
      */
     @Override
-    public Diagnosis[] generateDiagnosis()
+    protected boolean combinable(DEdge edge)
     {
-        LinkedList<GraphPath> needDiag = new LinkedList<>();
-        // First repair possible inconsistent observations
-        if(!DiagSTN.IGNOREINCONSIST && inconsistent != null) 
-        {
-            if(DiagSTN.PRINTWARNING)
-                System.out.println("Found inconsistent paths, will proceed with"
-                        + " repair suggestions");
-            Iterator<Observation> incIter = inconsistent.iterator();
-            while(incIter.hasNext())
-            {
-                Observation incObs = incIter.next();
-                LinkedHashSet<GraphPath> pathSet = obsPaths.get(incObs);
-                for(GraphPath p : pathSet)
-                    needDiag.add(p);
-                // TODO: fix some observation here!!!!
-                
-            }
-            
-            // for now lets not do both -> fix inconsistencies before
-            // trying to fix a normal network (see example) because inconsistency
-            // might point to a faulty model (use ignoreInconsistency)
-        }
-        else
-        {
-            for(Observation ob: observations)
-            {
-                // if observation is wrong....
-                // ie if difference is 0 ????
-                if(ob.fixneeded)
-                {
-                    LinkedHashSet<GraphPath> pathSet = obsPaths.get(ob);
-                    for(GraphPath p : pathSet)
-                        needDiag.add(p);    // faster way to copy?
-                }
-            }
-        }
-        /**
-         * CHECK: if no fix is needed the values shouldnt be allowed to change!!
-         * Is it caught with the [0,0] bounds added to the edges of that observ.?
-         */
-        generateDiagnosis(new Diagnosis(), needDiag, new ArrayList<>());
-        return diagnosisList.toArray(new Diagnosis[diagnosisList.size()]);
+        return edge.conChangesCombine();
     }
     
-    // Actual recursive implementation
-    private void generateDiagnosis(Diagnosis diagOriginal, LinkedList<GraphPath> wronglyPredicted, ArrayList<GraphPath> testedPaths)
+    @Override
+    protected int combinedLowerb(DEdge edge)
     {
-        if(wronglyPredicted.isEmpty())
-            return;
-        GraphPath path = wronglyPredicted.pop();    
-        testedPaths.add(path);
-        if(!diagOriginal.edgeUsed(path)) // if path is not solved try to solve it
-        {   
-            // ie. if in the current diagnosis an edge has already been solved on the current path
-            for(int i = 1; i < path.stepSize(); i++)
-            { 
-                DEdge edge = path.getStepE(i);  // for EACH edge on this path!
-                Diagnosis diag = diagOriginal.copy(); // new Diagnosis
-
-                //check if edge is part of any of the testedPaths, if so 
-                // it can't be used
-                boolean alreadyUsed = false;
-                if(!testedPaths.isEmpty())
-                {
-                    for(int j = 0; j < testedPaths.size()-1;j++) // shouldnt check the last added Path (ie. the current Path!!)
-                    {
-                        GraphPath p = testedPaths.get(j);
-                        if(p.edgeUsed(edge))
-                            alreadyUsed = true; // can't use this edge in current diagnosis 
-                    }                           // already part of solved path
-                }
-                if(alreadyUsed)
-                {
-                    continue;
-                }
-                // if combine possible
-                boolean combine = true;
-                ArrayList<int[]> changes = edge.getPossibleConChanges();
-                int[] finalchng = changes.remove(changes.size()-1); // lets start with the last added bounds
-                for(int[] bounds : changes)
-                {
-                    if((bounds[0] > finalchng[1])||(bounds[1] < finalchng[0]))
-                    {
-                        combine = false;
-                        break;
-                    }
-                    else
-                    {
-                        if(bounds[0] > finalchng[0])
-                            finalchng[0] = bounds[0];
-                        if(bounds[1] < finalchng[1])
-                            finalchng[1] = bounds[1];
-                    }
-                }
-                if(combine)
-                {
-                    diag.addPartial(edge, finalchng[0], finalchng[1]);
-                    if(wronglyPredicted.isEmpty())
-                        diagnosisList.add(diag);
-                    else
-                    {
-                        LinkedList<GraphPath> newWP = new LinkedList<>();
-                        for(GraphPath gp: wronglyPredicted)
-                            newWP.add(gp);
-                        ArrayList<GraphPath> newTP = new ArrayList<>();
-                        for(GraphPath g : testedPaths)
-                            newTP.add(g);
-                        generateDiagnosis(diag, newWP, newTP);
-                    }
-                }
-            }
-        }
-        else // apparently path was already solved
-        {   // continue as if it was solved
-            if(wronglyPredicted.isEmpty())
-                        diagnosisList.add(diagOriginal.copy());
-            else
-            {
-                LinkedList<GraphPath> newWP = new LinkedList<>();
-                for(GraphPath gp: wronglyPredicted)
-                    newWP.add(gp);
-                ArrayList<GraphPath> newTP = new ArrayList<>();
-                for(GraphPath g : testedPaths)
-                    newTP.add(g);
-                generateDiagnosis(diagOriginal.copy(), newWP, newTP);
-            }
-        }
+        return edge.getCombinedConLowerb();
+    }
+    
+    @Override
+    protected int combinedUpperb(DEdge edge)
+    {
+        return edge.getCombinedConUpperb();
     }
 }
@@ -94,9 +94,8 @@ public class ConDiagnosis
      */
     public boolean pathSolved(GraphPath p)
     {
-        for(int i = 1; i < p.stepSize(); i++)
+        for(DEdge edgeIn : p.toEdges())
         {
-            DEdge edgeIn = p.getStepE(i);
             if(faultyEdges.contains(edgeIn))
                 return true;
         }
@@ -17,8 +17,8 @@ package diag.stn.analyze;
 
 import diag.stn.STN.*;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
+import java.util.BitSet;
 
 /**
  * A Maximum confirmation and accuracy diagnosis of a Graph. 
@@ -27,32 +27,91 @@ import java.util.Map;
  */
 public class Diagnosis implements Comparable<Diagnosis>
 {
-    private ArrayList<DEdge> edges;
-    private Map<DEdge, int[]> changes;
+    // Partial diagnoses in order of adding, bounds packed as (lb << 32 | ub)
+    private DEdge[] edges;
+    private long[] bounds;
+    private int size;
+    private BitSet edgeIds;     // ids of all edges used
+    private IntHashMap index;   // edge id -> position in edges
     
     /**
      * Create new empty diagnosis
      */
     public Diagnosis()
     {
-        edges = new ArrayList<>();
-        changes = new HashMap<>();
+        edges = new DEdge[4];
+        bounds = new long[4];
+        size = 0;
+        edgeIds = new BitSet();
+        index = new IntHashMap(4);
+    }
+    
+    /* Copy of some other diagnosis, clones the arrays */
+    private Diagnosis(Diagnosis other)
+    {
+        int cap = other.size + 2; // room for the next partial diagnosis
+        edges = Arrays.copyOf(other.edges, cap);
+        bounds = Arrays.copyOf(other.bounds, cap);
+        size = other.size;
+        edgeIds = (BitSet) other.edgeIds.clone();
+        index = other.index.copy();
     }
     
     /**
      * Adds a partial diagnosis, meaning some sort of "fix" of a path by changing
-     * an edge on that path with a certain amount.
+     * an edge on that path with a certain amount. All edges of a diagnosis
+     * must be of the same Graph.
      * @param edge the directed edge object that needs changing to fix some path
      * @param lowerbound integer with the lower bound on the change needed
      * @param upperbound integer with the upper bound on the change needed
      */
     public void addPartial(DEdge edge, int lowerbound, int upperbound)
     {
-        int[] bound = new int[2];
-        bound[0] = lowerbound;
-        bound[1] = upperbound;
-        edges.add(edge);
-        changes.put(edge, bound);
+        long bound = pack(lowerbound, upperbound);
+        int i = find(edge);
+        if(i >= 0)
+        {
+            bounds[i] = bound; // already part of the diagnosis, new change
+            return;
+        }
+        if(size > 0 && !edges[0].sameStore(edge))
+        {
+            System.err.println("Edge of another graph can not be added to a diagnosis");
+            return;
+        }
+        if(size == edges.length)
+        {
+            edges = Arrays.copyOf(edges, size * 2);
+            bounds = Arrays.copyOf(bounds, size * 2);
+        }
+        index.put(edge.getID(), size);
+        edgeIds.set(edge.getID());
+        edges[size] = edge;
+        bounds[size] = bound;
+        size++;
+    }
+    
+    /* Position of an edge or -1 if it is not in the diagnosis */
+    private int find(DEdge edge)
+    {
+        if(!edgeIds.get(edge.getID()) || !edges[0].sameStore(edge))
+            return -1;
+        return index.get(edge.getID());
+    }
+    
+    private static long pack(int lb, int ub)
+    {
+        return ((long) lb << 32) | (ub & 0xFFFFFFFFL);
+    }
+    
+    private static int lowerOf(long bound)
+    {
+        return (int) (bound >> 32);
+    }
+    
+    private static int upperOf(long bound)
+    {
+        return (int) bound;
     }
     
     /**
@@ -62,7 +121,7 @@ public class Diagnosis implements Comparable<Diagnosis>
      */
     public boolean edgeUsed(DEdge edge)
     {
-        return edges.contains(edge);
+        return find(edge) >= 0;
     }
     
     /**
@@ -72,13 +131,9 @@ public class Diagnosis implements Comparable<Diagnosis>
      */
     public boolean edgeUsed(GraphPath path)
     {
-        boolean used = false;
-        for(int i = 1; i < path.stepSize(); i++)
-        {
-            if(edges.contains(path.getStepE(i)))
-                return true;
-        }
-        return false;
+        if(size == 0 || !path.idsFrom(edges[0]))
+            return false; // edges of another graph
+        return edgeIds.intersects(path.edgeIdSet());
     }
     
     /**
@@ -88,8 +143,7 @@ public class Diagnosis implements Comparable<Diagnosis>
     public DEdge[] getEdgesChanged()
     {
         // return shallow clone
-        ArrayList<DEdge> clone = new ArrayList(edges);
-        return clone.toArray(new DEdge[clone.size()]);
+        return Arrays.copyOf(edges, size);
     }
     
     /**
@@ -101,23 +155,24 @@ public class Diagnosis implements Comparable<Diagnosis>
      */
     public int[] getChanges(DEdge edg)
     {
-        if(changes.containsKey(edg))
-        {
-            int[] chng = changes.get(edg);
-            int[] cpy = new int[2];
-            cpy[0] = chng[0];
-            cpy[1] = chng[1];
-            return cpy;
-        }
-        else
+        int i = find(edg);
+        if(i < 0)
         {
-            for(DEdge changeEdge : edges)
+            for(int j = 0; j < size; j++)
             {
-                if(edg.isSimilar(changeEdge))
-                    return getChanges(changeEdge);
+                if(edg.isSimilar(edges[j]))
+                {
+                    i = j;
+                    break;
+                }
             }
         }
-        return null;
+        if(i < 0)
+            return null;
+        int[] cpy = new int[2];
+        cpy[0] = lowerOf(bounds[i]);
+        cpy[1] = upperOf(bounds[i]);
+        return cpy;
     }
     
     /**
@@ -129,9 +184,10 @@ public class Diagnosis implements Comparable<Diagnosis>
     {
         ArrayList<String> problemEdges = new ArrayList();
         System.out.print("Delta = {");
-        for(DEdge de: edges)
+        for(int i = 0; i < size; i++)
         {
-            int[] chngs = changes.get(de);
+            DEdge de = edges[i];
+            int[] chngs = {lowerOf(bounds[i]), upperOf(bounds[i])};
             if(chngs[0] != 0 || chngs[1] != 0) // The System can be simply correct and no change needed
             {
                 System.out.print("d" + de.getStart().getName() + "," + de.getEnd().getName());
@@ -161,13 +217,18 @@ public class Diagnosis implements Comparable<Diagnosis>
      */
     public Diagnosis copy()
     {
-        Diagnosis cpy = new Diagnosis();
-        for(DEdge d: edges)
-        {
-            int[] chngs = changes.get(d);
-            cpy.addPartial(d, chngs[0], chngs[1]);
-        }
-        return cpy;
+        return new Diagnosis(this);
+    }
+
+    /**
+     * Add all partial diagnosis of another diagnosis to this one (changes of
+     * edges which are in both are replaced by those of the other diagnosis)
+     * @param other Diagnosis object which is not changed
+     */
+    public void addAll(Diagnosis other)
+    {
+        for(int i = 0; i < other.size; i++)
+            addPartial(other.edges[i], lowerOf(other.bounds[i]), upperOf(other.bounds[i]));
     }
 
     @Override
@@ -176,9 +237,9 @@ public class Diagnosis implements Comparable<Diagnosis>
         final int BEFORE = -1;
         final int SIMILAR = 0;
         final int AFTER = 1;
-        if(this.changes.size() < other.changes.size())
+        if(this.size < other.size)
             return BEFORE;
-        else if(this.changes.size() > other.changes.size())
+        else if(this.size > other.size)
             return AFTER;
         else
         {
@@ -202,21 +263,19 @@ public class Diagnosis implements Comparable<Diagnosis>
     public int chngtally()
     {
         int out = 0;
-        for(DEdge de : edges)
+        for(int i = 0; i < size; i++)
         {
-            int[] edgeChng = changes.get(de);
-            if(edgeChng != null)
-            {
-                if(edgeChng[0] > 0)
-                    out += 1;
-                else if(edgeChng[0] < 0)
-                    out -= 1;
-                
-                if(edgeChng[1] > 0)
-                    out += 1;
-                else if(edgeChng[1] < 0)
-                    out -= 1;
-            }
+            int lb = lowerOf(bounds[i]);
+            int ub = upperOf(bounds[i]);
+            if(lb > 0)
+                out += 1;
+            else if(lb < 0)
+                out -= 1;
+
+            if(ub > 0)
+                out += 1;
+            else if(ub < 0)
+                out -= 1;
         }
         return out;
     }
@@ -235,23 +294,23 @@ public class Diagnosis implements Comparable<Diagnosis>
         for(Vertex oldV: in.listAllVertices())
             newGr.addVertex(oldV);
         DEdge[] oldEdges = in.listAllEdges();
-        ArrayList<DEdge> changeEdges = d.edges;
         for(DEdge oldE : oldEdges)
         {
             boolean addChange = false;
             int[] oldIds = {oldE.getStart().getID(), oldE.getEnd().getID()};
-            for(DEdge changeE : changeEdges)
+            for(int i = 0; i < d.size; i++)
             {
+                DEdge changeE = d.edges[i];
                 if(oldIds[0] == changeE.getStart().getID())
                 {
                     if(oldIds[1] == changeE.getEnd().getID())
                     {
-                        int[] chng = d.changes.get(changeE);
+                        int chng = lowerOf(d.bounds[i]);
                         Vertex start = newGr.getVertex(oldIds[0]);
                         Vertex end = newGr.getVertex(oldIds[1]);
                         newGr.addEdge(start, end,
-                                (oldE.getLowerb()+chng[0]),
-                                (oldE.getUpperb()+chng[0]),
+                                (oldE.getLowerb()+chng),
+                                (oldE.getUpperb()+chng),
                                 oldE.isContingent());
                         addChange = true;
                         // changes both the upper and lower bound by the minimal 
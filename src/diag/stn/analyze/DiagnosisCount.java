@@ -0,0 +1,117 @@
+/*
+ * Copyright 2016 Frans van den Heuvel.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package diag.stn.analyze;
+
+import java.math.BigInteger;
+
+/**
+ * Number of diagnoses and their summed sizes, without the diagnoses
+ * themselves (see Analyst.countDiagnoses). The sums are over all diagnoses so
+ * the same numbers CorrectCheck and diagSize give for a Diagnosis array.
+ * Also used for the diagnoses below a state of the search, which are
+ * combined into the counts of larger parts.
+ * @author Frans van den Heuvel
+ */
+public class DiagnosisCount
+{
+    /** No diagnoses */
+    public static final DiagnosisCount NONE = new DiagnosisCount(
+            BigInteger.ZERO, BigInteger.ZERO, BigInteger.ZERO);
+    /** A single diagnosis without changes */
+    public static final DiagnosisCount ONE = new DiagnosisCount(
+            BigInteger.ONE, BigInteger.ZERO, BigInteger.ZERO);
+
+    private final BigInteger count;
+    private final BigInteger edges; // summed number of changed edges
+    private final BigInteger width; // summed width (ub - lb) of the changes
+
+    private DiagnosisCount(BigInteger c, BigInteger e, BigInteger w)
+    {
+        count = c;
+        edges = e;
+        width = w;
+    }
+
+    /**
+     * Number of diagnoses
+     * @return BigInteger
+     */
+    public BigInteger getCount()
+    {
+        return count;
+    }
+
+    /**
+     * Number of changed edges summed over all diagnoses
+     * @return BigInteger
+     */
+    public BigInteger getEdges()
+    {
+        return edges;
+    }
+
+    /**
+     * Width of the change intervals summed over all diagnoses, same as
+     * CorrectCheck.diagnosisSize
+     * @return BigInteger
+     */
+    public BigInteger getWidth()
+    {
+        return width;
+    }
+
+    /**
+     * The diagnoses of this count with one more changed edge each
+     * @param changeWidth width of the change of the edge
+     * @return new DiagnosisCount
+     */
+    DiagnosisCount withChange(int changeWidth)
+    {
+        return new DiagnosisCount(count, edges.add(count),
+                width.add(count.multiply(BigInteger.valueOf(changeWidth))));
+    }
+
+    /**
+     * The diagnoses of this count and those of another count together
+     * (different diagnoses, eg. of different branches)
+     * @param other DiagnosisCount
+     * @return new DiagnosisCount
+     */
+    DiagnosisCount plus(DiagnosisCount other)
+    {
+        return new DiagnosisCount(count.add(other.count),
+                edges.add(other.edges), width.add(other.width));
+    }
+
+    /**
+     * All combinations of a diagnosis of this count with one of another
+     * count (diagnoses of independent parts, see DiagnosisProduct)
+     * @param other DiagnosisCount
+     * @return new DiagnosisCount
+     */
+    DiagnosisCount times(DiagnosisCount other)
+    {
+        return new DiagnosisCount(count.multiply(other.count),
+                edges.multiply(other.count).add(other.edges.multiply(count)),
+                width.multiply(other.count).add(other.width.multiply(count)));
+    }
+
+    @Override
+    public String toString()
+    {
+        return count + " diagnoses, " + edges + " changes, width " + width;
+    }
+}
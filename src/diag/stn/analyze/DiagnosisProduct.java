@@ -0,0 +1,215 @@
+/*
+ * Copyright 2016 Frans van den Heuvel.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package diag.stn.analyze;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * All diagnoses of a problem which falls apart into independent parts (parts
+ * which share no edges). Every full diagnosis is one diagnosis of every part
+ * combined, so only the diagnoses of the parts (the factors) are stored and
+ * the full diagnoses are made when they are asked for.
+ * @author Frans van den Heuvel
+ */
+public class DiagnosisProduct implements Iterable<Diagnosis>
+{
+    private final Diagnosis[][] factors;
+
+    /**
+     * Create the product of the diagnoses of some independent parts
+     * @param parts for every part all of its diagnoses
+     */
+    public DiagnosisProduct(List<Diagnosis[]> parts)
+    {
+        factors = parts.toArray(new Diagnosis[parts.size()][]);
+    }
+
+    /**
+     * Number of independent parts
+     * @return integer
+     */
+    public int factorCount()
+    {
+        return factors.length;
+    }
+
+    /**
+     * The diagnoses of one of the parts
+     * @param i index of the part
+     * @return array with the Diagnosis objects of the part
+     */
+    public Diagnosis[] getFactor(int i)
+    {
+        return factors[i].clone();
+    }
+
+    /**
+     * Number of full diagnoses (product of the number of diagnoses of each
+     * part). 0 if some part can not be diagnosed, 0 if there are no parts.
+     * @return BigInteger with the count
+     */
+    public BigInteger count()
+    {
+        if(factors.length == 0)
+            return BigInteger.ZERO;
+        BigInteger total = BigInteger.ONE;
+        for(Diagnosis[] f : factors)
+            total = total.multiply(BigInteger.valueOf(f.length));
+        return total;
+    }
+
+    /**
+     * Make a single full diagnosis. The diagnoses are numbered like a number
+     * with a digit for every part (first part is the most significant).
+     * @param index number of the diagnosis, from 0 to count()
+     * @return new Diagnosis object
+     */
+    public Diagnosis get(BigInteger index)
+    {
+        if(index.signum() < 0 || index.compareTo(count()) >= 0)
+        {
+            System.err.println("Diagnosis " + index + " is not part of the product");
+            return null;
+        }
+        int[] choice = new int[factors.length];
+        for(int i = factors.length - 1; i >= 0; i--)
+        {
+            BigInteger[] qr = index.divideAndRemainder(BigInteger.valueOf(factors[i].length));
+            choice[i] = qr[1].intValue();
+            index = qr[0];
+        }
+        return combine(choice);
+    }
+
+    /**
+     * Iterate over all full diagnoses (in order of get), each is made when
+     * it is asked for.
+     * @return Iterator with Diagnosis objects
+     */
+    @Override
+    public Iterator<Diagnosis> iterator()
+    {
+        return new Iterator<Diagnosis>()
+        {
+            private int[] choice = count().signum() > 0 ? new int[factors.length] : null;
+
+            @Override
+            public boolean hasNext()
+            {
+                return choice != null;
+            }
+
+            @Override
+            public Diagnosis next()
+            {
+                if(choice == null)
+                    throw new NoSuchElementException();
+                Diagnosis d = combine(choice);
+                int i = factors.length - 1;
+                while(i >= 0 && ++choice[i] == factors[i].length)
+                    choice[i--] = 0;
+                if(i < 0)
+                    choice = null; // done
+                return d;
+            }
+        };
+    }
+
+    /**
+     * The best full diagnoses in order of Diagnosis.compareTo. The size and
+     * change tally of a full diagnosis are the sums of those of its parts, so
+     * the best ones are found from the sorted parts without making all of
+     * them. Similar diagnoses are in no particular order.
+     * @param k maximum number of diagnoses
+     * @return list with at most k Diagnosis objects
+     */
+    public List<Diagnosis> best(int k)
+    {
+        List<Diagnosis> out = new ArrayList<>();
+        if(k < 1 || count().signum() == 0)
+            return out;
+        Diagnosis[][] sorted = new Diagnosis[factors.length][];
+        int[][] size = new int[factors.length][];
+        int[][] tally = new int[factors.length][];
+        for(int i = 0; i < factors.length; i++)
+        {
+            sorted[i] = factors[i].clone();
+            Arrays.sort(sorted[i]);
+            size[i] = new int[sorted[i].length];
+            tally[i] = new int[sorted[i].length];
+            for(int j = 0; j < sorted[i].length; j++)
+            {
+                size[i][j] = sorted[i][j].getEdgesChanged().length;
+                tally[i][j] = sorted[i][j].chngtally();
+            }
+        }
+        // Size first, then highest tally (like Diagnosis.compareTo)
+        PriorityQueue<int[]> queue = new PriorityQueue<>((a, b) ->
+        {
+            int sizeA = 0, sizeB = 0, tallyA = 0, tallyB = 0;
+            for(int i = 0; i < a.length; i++)
+            {
+                sizeA += size[i][a[i]];
+                sizeB += size[i][b[i]];
+                tallyA += tally[i][a[i]];
+                tallyB += tally[i][b[i]];
+            }
+            if(sizeA != sizeB)
+                return sizeA < sizeB ? -1 : 1;
+            return Integer.compare(tallyB, tallyA);
+        });
+        // Every choice is only queued from the choice with one digit less
+        // on the last digit that is not 0, so it is queued at most once
+        queue.add(new int[factors.length]);
+        while(!queue.isEmpty() && out.size() < k)
+        {
+            int[] choice = queue.poll();
+            out.add(combine(sorted, choice));
+            int last = factors.length - 1;
+            while(last > 0 && choice[last] == 0)
+                last--;
+            for(int i = last; i < factors.length; i++)
+            {
+                if(choice[i] + 1 < sorted[i].length)
+                {
+                    int[] next = choice.clone();
+                    next[i]++;
+                    queue.add(next);
+                }
+            }
+        }
+        return out;
+    }
+
+    private Diagnosis combine(int[] choice)
+    {
+        return combine(factors, choice);
+    }
+
+    private static Diagnosis combine(Diagnosis[][] from, int[] choice)
+    {
+        Diagnosis d = new Diagnosis();
+        for(int i = 0; i < from.length; i++)
+            d.addAll(from[i][choice[i]]);
+        return d;
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2016 Frans van den Heuvel.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package diag.stn.analyze;
+
+import diag.stn.STN.DEdge;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+
+/**
+ * How often an edge is changed by the diagnoses of a model (see
+ * Analyst.edgeFrequencies). An edge which is changed by more of the
+ * diagnoses is more likely to be at fault.
+ * @author Frans van den Heuvel
+ */
+public class EdgeFrequency
+{
+    private final DEdge edge;
+    private final BigInteger count;
+    private final BigInteger total;
+    private final int lowerb;
+    private final int upperb;
+
+    /**
+     * Create the frequency of an edge
+     * @param e the DEdge object
+     * @param c number of diagnoses which change the edge
+     * @param t number of diagnoses
+     * @param lb lower bound on the change of the edge
+     * @param ub upper bound on the change of the edge
+     */
+    public EdgeFrequency(DEdge e, BigInteger c, BigInteger t, int lb, int ub)
+    {
+        edge = e;
+        count = c;
+        total = t;
+        lowerb = lb;
+        upperb = ub;
+    }
+
+    /**
+     * The edge
+     * @return DEdge object
+     */
+    public DEdge getEdge()
+    {
+        return edge;
+    }
+
+    /**
+     * Number of diagnoses which change the edge
+     * @return BigInteger
+     */
+    public BigInteger getCount()
+    {
+        return count;
+    }
+
+    /**
+     * Number of diagnoses of the model
+     * @return BigInteger
+     */
+    public BigInteger getTotal()
+    {
+        return total;
+    }
+
+    /**
+     * Part of the diagnoses which change the edge
+     * @return double between 0 and 1
+     */
+    public double getFraction()
+    {
+        if(total.signum() == 0)
+            return 0;
+        return new BigDecimal(count).divide(new BigDecimal(total),
+                MathContext.DECIMAL64).doubleValue();
+    }
+
+    /**
+     * Lower bound on the change of the edge (same in every diagnosis)
+     * @return integer
+     */
+    public int getLowerb()
+    {
+        return lowerb;
+    }
+
+    /**
+     * Upper bound on the change of the edge (same in every diagnosis)
+     * @return integer
+     */
+    public int getUpperb()
+    {
+        return upperb;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "d" + edge.getStart().getName() + "," + edge.getEnd().getName() +
+                " \u2208 [" + lowerb + "," + upperb + "] in " + count + "/" +
+                total + " diagnoses";
+    }
+}
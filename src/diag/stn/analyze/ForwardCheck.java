@@ -0,0 +1,88 @@
+/*
+ * Copyright 2016 Frans van den Heuvel.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package diag.stn.analyze;
+
+import diag.stn.STN.DEdge;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Lookahead for the diagnosis search over a fixed array of paths. An edge can
+ * only be added to a diagnosis while the search handles the first path it is
+ * on (on later paths it is used before), so every path has a last path after
+ * which none of its edges can be added anymore. When the search is past that
+ * path, the path must already be solved, otherwise no full diagnosis can be
+ * found. For every path the number of edges that can still be added drops to
+ * zero on one path, the paths are stored by that path so each path is only
+ * checked once on every branch.
+ * @author Frans van den Heuvel
+ */
+class ForwardCheck
+{
+    private static final int[] NONE = new int[0];
+    
+    private final int[][] expiring; // paths that need to be solved after a path
+
+    /**
+     * Create the lookahead for some paths
+     * @param paths all paths that need to be solved (in search order)
+     * @param incidence the incidence of paths
+     * @param admissible tells if an edge can be changed by a diagnosis
+     */
+    ForwardCheck(GraphPath[] paths, PathIncidence incidence, Predicate<DEdge> admissible)
+    {
+        List<List<Integer>> byPath = new ArrayList<>();
+        for(int i = 0; i < paths.length; i++)
+            byPath.add(new ArrayList<>());
+        for(int j = 1; j < paths.length; j++)
+        {
+            int last = 0; // no edge at all, can be checked right away
+            for(DEdge edge : paths[j].toEdges())
+            {
+                if(admissible.test(edge))
+                    last = Math.max(last, incidence.pathsOf(edge).nextSetBit(0));
+            }
+            if(last < j)
+                byPath.get(last).add(j);
+        }
+        expiring = new int[paths.length][];
+        for(int i = 0; i < paths.length; i++)
+        {
+            List<Integer> list = byPath.get(i);
+            expiring[i] = list.isEmpty() ? NONE : list.stream().mapToInt(Integer::intValue).toArray();
+        }
+    }
+
+    /**
+     * Can a diagnosis still be completed. Only looks at the paths that can not
+     * be solved anymore after current (paths which could not be solved after
+     * an earlier path are checked on that path).
+     * @param diag diagnosis that solves all paths up to and including current
+     * @param paths all paths that need to be solved
+     * @param current index of the path that was just solved
+     * @return index of a path that can not be solved anymore, -1 if none
+     */
+    int deadPath(PartialDiagnosis diag, GraphPath[] paths, int current)
+    {
+        for(int j : expiring[current])
+        {
+            if(!diag.edgeUsed(paths[j]))
+                return j;
+        }
+        return -1;
+    }
+}
@@ -17,16 +17,24 @@ package diag.stn.analyze;
 
 import diag.stn.STN.*;
 import java.util.ArrayList;
+import java.util.BitSet;
 
 /**
  * A path in the Graph. Consists of a series of nodes in a certain order and the
  * edges used to traverse these nodes in order.
+ * A path can also be a pointer into a PathTrie (see PathTrie.add), then it
+ * shares its prefix with other paths. Such a path is turned into a normal
+ * path as soon as a step is added.
  * @author Frans van den Heuvel
  */
 public class GraphPath
 {
-    private ArrayList<Vertex> vertices;
-    private ArrayList<DEdge> edges;
+    private ArrayList<Vertex> vertices; // null when stored in a trie
+    private ArrayList<DEdge> edges;     // null when stored in a trie
+    private PathTrie trie;
+    private int node;         // last node of the path in the trie
+    private BitSet edgeIds;   // ids of the edges used, for O(1) lookups
+    private DEdge storeRef;   // first edge, all edges are from its store
     
     /**
      * Construct an empty Graph with only the starting vertex.
@@ -36,15 +44,39 @@ public class GraphPath
     {
         vertices = new ArrayList<>();
         edges = new ArrayList<>();
+        edgeIds = new BitSet();
         vertices.add(start);
     }
+    
     /**
-     * Add a step to the path. Done by adding a vertex reachable by an edge
+     * Construct a path that is stored in a trie, only used by PathTrie
+     * @param t the trie
+     * @param last last node of the path
+     */
+    GraphPath(PathTrie t, int last)
+    {
+        trie = t;
+        node = last;
+    }
+    
+    /**
+     * Add a step to the path. Done by adding a vertex reachable by an edge.
+     * All edges of a path must be of the same Graph.
      * @param edg directed edge object used for reaching new vertex
      * @param next vertex object that is the next step in the path
      */
     public void addStep(DEdge edg, Vertex next)
     {
+        if(trie != null)
+            detach();
+        if(storeRef == null)
+            storeRef = edg;
+        else if(!storeRef.sameStore(edg))
+        {
+            System.err.println("Edge of another graph can not be added to a path");
+            return;
+        }
+        edgeIds.set(edg.getID());
         edges.add(edg);
         vertices.add(next);
     }
@@ -56,17 +88,22 @@ public class GraphPath
      */
     public Vertex getStepV(int step)
     {
+        if(trie != null)
+            return trie.vertex(trie.ancestor(node, step));
         return vertices.get(step);
     }
     
     /**
      * Get a certain (edge) step on the path. returns the edge used to get to the
-     * vertex on that step.
+     * vertex on that step. For a path stored in a trie this is O(steps), use
+     * toEdges() to go over all the edges.
      * @param step the step number. Starts from 1 (start) to size-1 / # steps added
      * @return a Vertex object
      */
     public DEdge getStepE(int step)
     {
+        if(trie != null)
+            return trie.edge(trie.ancestor(node, step));
         return edges.get(step - 1);
     }
     
@@ -76,6 +113,8 @@ public class GraphPath
      */
     public Vertex getLastV()
     {
+        if(trie != null)
+            return trie.vertex(node);
         return vertices.get(vertices.size()-1);
     }
     
@@ -86,16 +125,92 @@ public class GraphPath
      */
     public int stepSize()
     {
+        if(trie != null)
+            return trie.depth(node) + 1;
         return vertices.size();
     }
     
+    /**
+     * Sum of the lower bounds of all edges on the path. O(1) for a path stored
+     * in a trie (uses the bounds at the moment of storing).
+     * @return integer
+     */
+    public int sumLowerb()
+    {
+        if(trie != null)
+            return trie.lbSum(node);
+        int sum = 0;
+        for(DEdge de : edges)
+            sum += de.getLowerb();
+        return sum;
+    }
+    
+    /**
+     * Sum of the upper bounds of all edges on the path. O(1) for a path stored
+     * in a trie (uses the bounds at the moment of storing).
+     * @return integer
+     */
+    public int sumUpperb()
+    {
+        if(trie != null)
+            return trie.ubSum(node);
+        int sum = 0;
+        for(DEdge de : edges)
+            sum += de.getUpperb();
+        return sum;
+    }
+    
     /**
      * Quick method for removing the last vertex and edge used. Removes last addstep.
      */
     public void removeLast()
     {
+        if(trie != null)
+        {
+            node = trie.parent(node);
+            edgeIds = null; // rebuilt when needed
+            return;
+        }
         vertices.remove(vertices.size() - 1);
-        edges.remove(edges.size() - 1);
+        DEdge last = edges.remove(edges.size() - 1);
+        if(!edges.contains(last)) // an edge can be on a path more than once
+            edgeIds.clear(last.getID());
+    }
+    
+    /* Turn a path in a trie into a normal path with its own lists */
+    private void detach()
+    {
+        int n = stepSize();
+        Vertex[] vs = new Vertex[n];
+        DEdge[] es = new DEdge[n - 1];
+        int cur = node;
+        for(int i = n - 1; i > 0; i--)
+        {
+            vs[i] = trie.vertex(cur);
+            es[i - 1] = trie.edge(cur);
+            cur = trie.parent(cur);
+        }
+        vs[0] = trie.vertex(cur);
+        trie = null;
+        vertices = new ArrayList<>(n + 4);
+        edges = new ArrayList<>(n + 4);
+        edgeIds = new BitSet();
+        storeRef = null;
+        vertices.add(vs[0]);
+        for(int i = 1; i < n; i++)
+            addStep(es[i - 1], vs[i]);
+    }
+    
+    /* Build the edge id bitset of a path stored in a trie */
+    private void buildIds()
+    {
+        edgeIds = new BitSet();
+        storeRef = null;
+        for(int cur = node; trie.parent(cur) >= 0; cur = trie.parent(cur))
+        {
+            storeRef = trie.edge(cur); // all of the same graph
+            edgeIds.set(storeRef.getID());
+        }
     }
     
     /**
@@ -105,7 +220,44 @@ public class GraphPath
      */
     public boolean edgeUsed(DEdge de)
     {
-        return edges.contains(de); // if contains then used !
+        if(edgeIds == null)
+            buildIds();
+        if(!edgeIds.get(de.getID()))
+            return false; // no edge with that id so certainly not used
+        return storeRef.sameStore(de); // id is unique within the store
+    }
+    
+    /* Bitset with the ids of the edges on the path, see idsFrom */
+    BitSet edgeIdSet()
+    {
+        if(edgeIds == null)
+            buildIds();
+        return edgeIds;
+    }
+    
+    /* Are the edge ids of the path from the same store as some edge (only
+    then edgeIdSet can be compared with ids of that store) */
+    boolean idsFrom(DEdge de)
+    {
+        if(edgeIds == null)
+            buildIds();
+        return storeRef == null || storeRef.sameStore(de);
+    }
+    
+    /**
+     * Check if this path and some other path have an edge in common
+     * @param other some other GraphPath
+     * @return true if at least one edge is used by both paths
+     */
+    public boolean sharesEdge(GraphPath other)
+    {
+        if(edgeIds == null)
+            buildIds();
+        if(other.edgeIds == null)
+            other.buildIds();
+        if(!edgeIds.intersects(other.edgeIds))
+            return false;
+        return storeRef.sameStore(other.storeRef); // edges of one graph
     }
     
     /**
@@ -114,16 +266,47 @@ public class GraphPath
      */
     public DEdge[] toEdges()
     {
+        if(trie != null)
+        {
+            DEdge[] es = new DEdge[trie.depth(node)];
+            int cur = node;
+            for(int i = es.length - 1; i >= 0; i--)
+            {
+                es[i] = trie.edge(cur);
+                cur = trie.parent(cur);
+            }
+            return es;
+        }
         return edges.toArray(new DEdge[edges.size()]);
     }
     
+    /* The vertices in order used by this graphpath */
+    private Vertex[] toVertices()
+    {
+        if(trie != null)
+        {
+            Vertex[] vs = new Vertex[trie.depth(node) + 1];
+            int cur = node;
+            for(int i = vs.length - 1; i >= 0; i--)
+            {
+                vs[i] = trie.vertex(cur);
+                cur = trie.parent(cur);
+            }
+            return vs;
+        }
+        return vertices.toArray(new Vertex[vertices.size()]);
+    }
+    
     /**
      * A copy value that creates a new GraphPath but uses the same object 
      * references inside the new GraphPath object. (shallow copy)
+     * A path stored in a trie gives a new pointer to the same trie node.
      * @return new GraphPath object that has the same references.
      */
     public GraphPath copy()
     {
+        if(trie != null)
+            return new GraphPath(trie, node);
         GraphPath newGP = new GraphPath(vertices.get(0));
         for(int i = 1; i < vertices.size(); i++)
         {
@@ -141,24 +324,26 @@ public class GraphPath
      */
     public void simplePrint()
     {
-        System.out.print(vertices.get(0).getName());
-        for(int i = 1; i < vertices.size(); i++)
+        Vertex[] vs = toVertices();
+        DEdge[] es = toEdges();
+        System.out.print(vs[0].getName());
+        for(int i = 1; i < vs.length; i++)
         {
-            DEdge e = getStepE(i);
+            DEdge e = es[i - 1];
             System.out.print(" -[" + e.getLowerb() + "," + e.getUpperb() + "]-> ");
-            System.out.print(vertices.get(i).getName());
+            System.out.print(vs[i].getName());
         }
         System.out.print("\n");
     }
     
     public void smallPrint()
     {
-        System.out.print(vertices.get(0).getName());
-        for(int i = 1; i < vertices.size(); i++)
+        Vertex[] vs = toVertices();
+        System.out.print(vs[0].getName());
+        for(int i = 1; i < vs.length; i++)
         {
-            DEdge e = getStepE(i);
             System.out.print("-");
-            System.out.print(vertices.get(i).getName());
+            System.out.print(vs[i].getName());
         }
         System.out.print("\n");
     }
@@ -170,12 +355,13 @@ public class GraphPath
      */
     public boolean isSimilar(GraphPath other)
     {
-        if(other.vertices.size() != this.vertices.size())
+        if(other.stepSize() != this.stepSize())
             return false;
-        for(int i = 0 ; i < vertices.size(); i++)
+        Vertex[] mine = toVertices();
+        Vertex[] theirs = other.toVertices();
+        for(int i = 0 ; i < mine.length; i++)
         {
-            if(this.vertices.get(i).getID() !=
-                    other.vertices.get(i).getID())
+            if(mine[i].getID() != theirs[i].getID())
                 return false;
         }
         return true;
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2016 Frans van den Heuvel.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package diag.stn.analyze;
+
+import diag.stn.STN.DEdge;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Finds the minimal hitting sets of a collection of conflict sets (sets of
+ * edges of which at least one must be faulty) with Reiter's HS-tree. Every
+ * node of the tree is a set of edges, its children add one edge of a conflict
+ * that the set does not hit yet. The tree is built breadth first so hitting
+ * sets are found in order of size, which makes the pruning rules work:
+ * a node which contains an earlier found hitting set is closed, and a set
+ * which is already on the current level is reused instead of expanded again.
+ * Conflicts which contain another conflict are removed up front.
+ * Edges are numbered locally so the sets are bitsets.
+ * @author Frans van den Heuvel
+ */
+class HittingSetTree
+{
+    private final List<DEdge> edges;    // local number -> edge
+    private final Map<DEdge, Integer> numbers;
+    private final List<BitSet> conflicts;
+    private boolean emptyConflict;      // a conflict nothing can hit
+
+    HittingSetTree()
+    {
+        edges = new ArrayList<>();
+        numbers = new IdentityHashMap<>();
+        conflicts = new ArrayList<>();
+        emptyConflict = false;
+    }
+
+    /**
+     * Add a conflict set
+     * @param conflict edges of which at least one must be in a hitting set
+     */
+    void addConflict(List<DEdge> conflict)
+    {
+        BitSet set = new BitSet();
+        for(DEdge de : conflict)
+        {
+            Integer n = numbers.get(de);
+            if(n == null)
+            {
+                n = edges.size();
+                edges.add(de);
+                numbers.put(de, n);
+            }
+            set.set(n);
+        }
+        if(set.isEmpty())
+            emptyConflict = true;
+        conflicts.add(set);
+    }
+
+    /**
+     * Find all minimal hitting sets
+     * @param maxSize largest hitting set to search for (smaller than 0 for
+     * no limit)
+     * @param proceed called for every node, the search stops (and returns the
+     * sets found so far) when it gives false
+     * @return the hitting sets in order of size (edges in order of adding)
+     */
+    List<DEdge[]> minimalHittingSets(int maxSize, BooleanSupplier proceed)
+    {
+        List<DEdge[]> out = new ArrayList<>();
+        if(emptyConflict)
+            return out;
+        List<BitSet> minimal = minimalConflicts();
+        List<BitSet> found = new ArrayList<>();
+        List<BitSet> level = new ArrayList<>();
+        level.add(new BitSet());
+        int size = 0;
+        while(!level.isEmpty())
+        {
+            List<BitSet> nextLevel = new ArrayList<>();
+            Set<BitSet> seen = new HashSet<>(); // node reuse on the next level
+            for(BitSet node : level)
+            {
+                if(!proceed.getAsBoolean())
+                    return out;
+                if(containsFound(node, found))
+                    continue; // closed, a subset is a hitting set already
+                BitSet conflict = firstUnhit(node, minimal);
+                if(conflict == null)
+                {
+                    found.add(node);
+                    out.add(toEdges(node));
+                    continue;
+                }
+                if(size == maxSize)
+                    continue; // children would be too large
+                for(int e = conflict.nextSetBit(0); e >= 0; e = conflict.nextSetBit(e + 1))
+                {
+                    BitSet child = (BitSet) node.clone();
+                    child.set(e);
+                    if(seen.add(child))
+                        nextLevel.add(child);
+                }
+            }
+            level = nextLevel;
+            size++;
+        }
+        return out;
+    }
+
+    /* Conflicts without the duplicates and the supersets of other conflicts */
+    private List<BitSet> minimalConflicts()
+    {
+        List<BitSet> minimal = new ArrayList<>();
+        for(int i = 0; i < conflicts.size(); i++)
+        {
+            BitSet c = conflicts.get(i);
+            boolean keep = true;
+            for(int j = 0; j < conflicts.size() && keep; j++)
+            {
+                BitSet other = conflicts.get(j);
+                if(j == i || !isSubset(other, c))
+                    continue;
+                // of equal conflicts only the first is kept
+                if(!other.equals(c) || j < i)
+                    keep = false;
+            }
+            if(keep)
+                minimal.add(c);
+        }
+        return minimal;
+    }
+
+    private static BitSet firstUnhit(BitSet node, List<BitSet> sets)
+    {
+        for(BitSet c : sets)
+        {
+            if(!c.intersects(node))
+                return c;
+        }
+        return null;
+    }
+
+    private static boolean containsFound(BitSet node, List<BitSet> found)
+    {
+        for(BitSet f : found)
+        {
+            if(isSubset(f, node))
+                return true;
+        }
+        return false;
+    }
+
+    private static boolean isSubset(BitSet a, BitSet b)
+    {
+        BitSet rest = (BitSet) a.clone();
+        rest.andNot(b);
+        return rest.isEmpty();
+    }
+
+    private DEdge[] toEdges(BitSet set)
+    {
+        DEdge[] out = new DEdge[set.cardinality()];
+        int i = 0;
+        for(int e = set.nextSetBit(0); e >= 0; e = set.nextSetBit(e + 1))
+            out[i++] = edges.get(e);
+        return out;
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2016 Frans van den Heuvel.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package diag.stn.analyze;
+
+import diag.stn.STN.DEdge;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.function.Predicate;
+
+/**
+ * Orders paths so the ones with the fewest edges that can be changed come
+ * first (contingent edges and edges without a combined change do not count).
+ * These have the fewest branches, so the top of the search tree stays small.
+ * Of paths with as many changeable edges the ones sharing edges with the most
+ * other paths come first, their edges can not be used by the later paths so
+ * these are pruned the most. Otherwise the generated order is kept.
+ * @author Frans van den Heuvel
+ */
+public class MostConstrainedOrdering implements PathOrderingStrategy
+{
+    @Override
+    public GraphPath[] order(GraphPath[] paths, Predicate<DEdge> admissible)
+    {
+        int n = paths.length;
+        int[] choices = new int[n];
+        int[] shared = new int[n];
+        PathIncidence incidence = new PathIncidence(paths);
+        for(int i = 0; i < n; i++)
+        {
+            BitSet neighbours = new BitSet(n);
+            for(DEdge edge : paths[i].toEdges())
+            {
+                if(!edge.isContingent() && admissible.test(edge))
+                    choices[i]++;
+                neighbours.or(incidence.pathsOf(edge));
+            }
+            neighbours.clear(i);
+            shared[i] = neighbours.cardinality();
+        }
+        Integer[] order = new Integer[n];
+        for(int i = 0; i < n; i++)
+            order[i] = i;
+        Arrays.sort(order, Comparator.<Integer>comparingInt(i -> choices[i])
+                .thenComparingInt(i -> -shared[i])); // stable sort
+        GraphPath[] out = new GraphPath[n];
+        for(int i = 0; i < n; i++)
+            out[i] = paths[order[i]];
+        return out;
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2016 Frans van den Heuvel.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package diag.stn.analyze;
+
+import diag.stn.STN.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+
+/**
+ * Analyst which searches for diagnoses on multiple threads. The top levels of
+ * the search tree are split into fork/join tasks (every change of an edge of
+ * the path being solved is a separate subtree), deeper levels are searched
+ * sequentially like the Analyst does. The results of the subtrees are merged
+ * in the order of the sequential search so the diagnoses (and their order)
+ * are the same as those of the Analyst. All searches of the analyst use the
+ * same thread pool, call shutdown when the analyst is not used anymore.
+ * @author Frans van den Heuvel
+ */
+public class ParallelAnalyst extends Analyst
+{
+    private static final int DEFAULT_SPLIT_DEPTH = 3;
+    private static final int MIN_REMAINING = 2; // paths left to split a task
+
+    private final ForkJoinPool pool;
+    private final int splitDepth;
+
+    /**
+     * Creates a new parallel analyst which uses all available processors
+     * @param g Graph object that needs to be analyzed
+     */
+    public ParallelAnalyst(Graph g)
+    {
+        this(g, Runtime.getRuntime().availableProcessors(), DEFAULT_SPLIT_DEPTH);
+    }
+
+    /**
+     * Creates a new parallel analyst
+     * @param g Graph object that needs to be analyzed
+     * @param threads number of threads used for the diagnosis search
+     * @param depth the search is only split into tasks for the first depth
+     * paths, below that it is sequential
+     */
+    public ParallelAnalyst(Graph g, int threads, int depth)
+    {
+        super(g);
+        if(threads < 1)
+        {
+            System.err.println("ParallelAnalyst needs at least 1 thread, using 1");
+            threads = 1;
+        }
+        pool = new ForkJoinPool(threads);
+        splitDepth = depth;
+    }
+
+    /**
+     * Stop the threads of this analyst, searches can not be done afterwards
+     * (the threads also stop by themselves when they are idle for a while)
+     */
+    public void shutdown()
+    {
+        pool.shutdown();
+    }
+
+    /**
+     * Generate all possible full diagnosis for this model. The search is done
+     * in parallel, the diagnoses are given to the consumer (on the calling
+     * thread, in the order of the sequential search) when the search is done.
+     * Needs propagateWeights to be done before diagnosis can start.
+     * @param found receives every Diagnosis that is found
+     */
+    @Override
+    public void generateDiagnosis(Consumer<Diagnosis> found)
+    {
+        GraphPath[] paths = pathsToDiagnose();
+        if(paths.length == 0)
+            return;
+        for(GraphPath p : paths)
+            p.edgeIdSet(); // build the lookups before sharing the paths
+        pool.invoke(new SearchTask(PartialDiagnosis.EMPTY, paths, 0)).forEach(found);
+    }
+
+    /**
+     * Search the diagnoses of independent groups of paths, all groups are
+     * searched in parallel.
+     * @param groups list of path arrays
+     * @return list with for every group an array of its diagnoses
+     */
+    @Override
+    protected List<Diagnosis[]> diagnoseComponents(List<GraphPath[]> groups)
+    {
+        List<SearchTask> tasks = new ArrayList<>();
+        for(GraphPath[] group : groups)
+        {
+            for(GraphPath p : group)
+                p.edgeIdSet();
+            tasks.add(new SearchTask(PartialDiagnosis.EMPTY, group, 0));
+        }
+        for(SearchTask task : tasks)
+            pool.execute(task); // all groups at the same time
+        List<Diagnosis[]> out = new ArrayList<>();
+        for(SearchTask task : tasks)
+        {
+            List<Diagnosis> found = task.join();
+            out.add(found.toArray(new Diagnosis[found.size()]));
+        }
+        return out;
+    }
+
+    /* Search of the subtree below some diagnosis (never serialized) */
+    @SuppressWarnings("serial")
+    private class SearchTask extends RecursiveTask<List<Diagnosis>>
+    {
+        private final PartialDiagnosis diag;
+        private final GraphPath[] paths;
+        private final int current;
+
+        SearchTask(PartialDiagnosis d, GraphPath[] p, int c)
+        {
+            diag = d;
+            paths = p;
+            current = c;
+        }
+
+        @Override
+        protected List<Diagnosis> compute()
+        {
+            List<Diagnosis> found = new ArrayList<>();
+            if(current >= splitDepth || paths.length - current <= MIN_REMAINING)
+            {
+                generateDiagnosis(diag, paths, current, found::add);
+                return found;
+            }
+            // Not the last path so every branch continues with the next path
+            List<SearchTask> tasks = new ArrayList<>();
+            for(PartialDiagnosis next : branches(diag, paths, current))
+                tasks.add(new SearchTask(next, paths, current + 1));
+            invokeAll(tasks);
+            for(SearchTask task : tasks)
+                found.addAll(task.join()); // keep the sequential order
+            return found;
+        }
+    }
+}
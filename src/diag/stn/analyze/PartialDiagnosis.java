@@ -0,0 +1,172 @@
+/*
+ * Copyright 2016 Frans van den Heuvel.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package diag.stn.analyze;
+
+import diag.stn.STN.*;
+
+/**
+ * Immutable diagnosis used while searching for diagnoses. Adding a partial
+ * diagnosis gives a new object which shares all earlier partial diagnoses
+ * with its parent (a linked list from the last added change to the first),
+ * so branching in the search copies nothing. Lookups walk the list, which
+ * is short (one change per solved path at most), and use the edge id bitset
+ * of a path (see GraphPath.edgeUsed). Only the diagnoses that are found are
+ * turned into a normal Diagnosis (see toDiagnosis()). All changed edges must
+ * be of the same Graph.
+ * @author Frans van den Heuvel
+ */
+public final class PartialDiagnosis
+{
+    /** Diagnosis without any changes */
+    public static final PartialDiagnosis EMPTY = new PartialDiagnosis();
+
+    private final PartialDiagnosis parent;
+    private final DEdge edge;
+    private final int lowerb;
+    private final int upperb;
+    private final int size;
+    private final int tally;  // see Diagnosis.chngtally
+    private final long width; // summed width of the changes
+
+    private PartialDiagnosis()
+    {
+        parent = null;
+        edge = null;
+        lowerb = 0;
+        upperb = 0;
+        size = 0;
+        tally = 0;
+        width = 0;
+    }
+
+    private PartialDiagnosis(PartialDiagnosis par, DEdge de, int lb, int ub)
+    {
+        parent = par;
+        edge = de;
+        lowerb = lb;
+        upperb = ub;
+        size = par.size + 1;
+        tally = par.tally + Integer.signum(lb) + Integer.signum(ub);
+        width = par.width + ((long) ub - lb);
+    }
+
+    /**
+     * Add a partial diagnosis (change of an edge), this object is not changed
+     * @param de the directed edge object that needs changing
+     * @param lb integer with the lower bound on the change needed
+     * @param ub integer with the upper bound on the change needed
+     * @return new PartialDiagnosis with the extra change
+     */
+    public PartialDiagnosis add(DEdge de, int lb, int ub)
+    {
+        if(edge != null && !edge.sameStore(de))
+        {
+            System.err.println("Edge of another graph can not be added to a diagnosis");
+            return this;
+        }
+        return new PartialDiagnosis(this, de, lb, ub);
+    }
+
+    /**
+     * Number of changed edges
+     * @return integer
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Tally of the directions of the changes, same as chngtally of the
+     * Diagnosis (a higher tally is preferred)
+     * @return integer
+     */
+    public int chngtally()
+    {
+        return tally;
+    }
+    
+    /**
+     * Summed width (upper bound - lower bound) of all changes, a smaller width
+     * is a more precise diagnosis
+     * @return long
+     */
+    public long changeWidth()
+    {
+        return width;
+    }
+    
+    /**
+     * Check if an edge is changed by this diagnosis
+     * @param de directed edge object (must be the exact object)
+     * @return true if the edge is changed
+     */
+    public boolean edgeUsed(DEdge de)
+    {
+        for(PartialDiagnosis d = this; d.edge != null; d = d.parent)
+        {
+            if(d.edge == de)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Check if any of the edges of some path is changed by this diagnosis
+     * @param path A path with edges that need to be checked
+     * @return true if any of the edges are changed
+     */
+    public boolean edgeUsed(GraphPath path)
+    {
+        if(edge == null || !path.idsFrom(edge))
+            return false; // edges of another graph
+        for(PartialDiagnosis d = this; d.edge != null; d = d.parent)
+        {
+            if(path.edgeUsed(d.edge))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * The changed edges (in order of adding)
+     * @return DEdge array
+     */
+    public DEdge[] getEdges()
+    {
+        DEdge[] out = new DEdge[size];
+        int i = size;
+        for(PartialDiagnosis d = this; d.edge != null; d = d.parent)
+            out[--i] = d.edge;
+        return out;
+    }
+    
+    /**
+     * Create a normal Diagnosis with the same changes (in order of adding)
+     * @return new Diagnosis object
+     */
+    public Diagnosis toDiagnosis()
+    {
+        PartialDiagnosis[] chain = new PartialDiagnosis[size];
+        int i = size;
+        for(PartialDiagnosis d = this; d.edge != null; d = d.parent)
+            chain[--i] = d;
+        Diagnosis diag = new Diagnosis();
+        for(PartialDiagnosis d : chain)
+            diag.addPartial(d.edge, d.lowerb, d.upperb);
+        return diag;
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2016 Frans van den Heuvel.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package diag.stn.analyze;
+
+import diag.stn.STN.DEdge;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Index from every edge to the paths it is part of, for a fixed array of
+ * paths (numbered by their position in the array, which is the order in which
+ * the diagnosis search handles them). Built once, read only afterwards so it
+ * can be shared between threads.
+ * @author Frans van den Heuvel
+ */
+public class PathIncidence
+{
+    private final GraphPath[] paths;
+    private final Map<DEdge, BitSet> incidence; // edge (exact object) -> path numbers
+
+    /**
+     * Create the index for some paths
+     * @param p array of GraphPath objects (not copied, should not be changed)
+     */
+    public PathIncidence(GraphPath[] p)
+    {
+        paths = p;
+        incidence = new IdentityHashMap<>();
+        for(int i = 0; i < p.length; i++)
+        {
+            for(DEdge edge : p[i].toEdges())
+            {
+                BitSet onPaths = incidence.get(edge);
+                if(onPaths == null)
+                {
+                    onPaths = new BitSet(p.length);
+                    incidence.put(edge, onPaths);
+                }
+                onPaths.set(i);
+            }
+        }
+    }
+
+    /**
+     * Is this the index of some array of paths
+     * @param p array of GraphPath objects
+     * @return true if p is the (same) array this index was built for
+     */
+    public boolean indexes(GraphPath[] p)
+    {
+        return paths == p;
+    }
+
+    /**
+     * Is an edge part of any of the paths before some path
+     * @param edge DEdge object (exact object)
+     * @param current number of the path
+     * @return true if the edge is on a path with a lower number
+     */
+    public boolean usedBefore(DEdge edge, int current)
+    {
+        BitSet onPaths = incidence.get(edge);
+        if(onPaths == null)
+            return false;
+        int first = onPaths.nextSetBit(0);
+        return first >= 0 && first < current;
+    }
+
+    /**
+     * The paths some edge is part of
+     * @param edge DEdge object (exact object)
+     * @return bitset with the path numbers (do not change), empty if none
+     */
+    public BitSet pathsOf(DEdge edge)
+    {
+        BitSet onPaths = incidence.get(edge);
+        return onPaths == null ? new BitSet() : onPaths;
+    }
+}
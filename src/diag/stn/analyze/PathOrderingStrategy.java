@@ -0,0 +1,44 @@
+/*
+ * Copyright 2016 Frans van den Heuvel.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package diag.stn.analyze;
+
+import diag.stn.STN.DEdge;
+import java.util.function.Predicate;
+
+/**
+ * Decides in which order the diagnosis search handles the paths that need
+ * solving (see Analyst.setPathOrdering). An edge on an earlier path can not
+ * be used to solve a later path, so the order changes which diagnoses are
+ * found and not only how fast they are found.
+ * @author Frans van den Heuvel
+ */
+public interface PathOrderingStrategy
+{
+    /** Keep the order in which the paths were generated (default) */
+    PathOrderingStrategy INSERTION = (paths, admissible) -> paths;
+    
+    /** Most constrained paths first, see MostConstrainedOrdering */
+    PathOrderingStrategy MOST_CONSTRAINED = new MostConstrainedOrdering();
+    
+    /**
+     * Order some paths
+     * @param paths the paths that need solving in the order they were generated
+     * (do not change)
+     * @param admissible tells if an edge can be changed by a diagnosis
+     * @return array with the same paths in the order to search them
+     */
+    GraphPath[] order(GraphPath[] paths, Predicate<DEdge> admissible);
+}
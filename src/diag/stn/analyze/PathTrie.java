@@ -0,0 +1,216 @@
+/*
+ * Copyright 2016 Frans van den Heuvel.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package diag.stn.analyze;
+
+import diag.stn.STN.*;
+import java.util.Arrays;
+
+/**
+ * Storage for many paths that share prefixes. Every node is one step of a path
+ * (the edge used and its parent node) and a path is a pointer to its last node,
+ * see GraphPath. Paths found by a depth first search share their prefix with
+ * the path found before them, so only the new suffix is stored for each path.
+ * The nodes also store the sum of the bounds of the prefix so the bounds of a
+ * full path are known in O(1).
+ * @author Frans van den Heuvel
+ */
+public class PathTrie
+{
+    private int size;
+    private int[] parent;
+    private int[] depth;
+    private int[] lbSum;
+    private int[] ubSum;
+    private DEdge[] edges;   // edge used to reach the node, null for a root
+    private Vertex[] verts;  // vertex reached
+
+    private int[] chain;     // nodes of the last added path (per depth)
+    private int chainLength;
+
+    /**
+     * Create an empty trie
+     */
+    public PathTrie()
+    {
+        int cap = 64;
+        size = 0;
+        parent = new int[cap];
+        depth = new int[cap];
+        lbSum = new int[cap];
+        ubSum = new int[cap];
+        edges = new DEdge[cap];
+        verts = new Vertex[cap];
+        chain = new int[16];
+        chainLength = 0;
+    }
+
+    /**
+     * Store a path. Shares the longest common prefix with the path added
+     * before, so add paths in the order they are found. The bound sums use the
+     * bounds of the edges at the time of adding.
+     * @param p GraphPath with the path to store (is not changed)
+     * @return new (read only) GraphPath which is stored in this trie
+     */
+    public GraphPath add(GraphPath p)
+    {
+        int n = p.stepSize();
+        DEdge[] pathEdges = p.toEdges();
+        int common = 0;
+        if(chainLength > 0 && verts[chain[0]] == p.getStepV(0))
+        {
+            common = 1;
+            while(common < chainLength && common < n &&
+                    edges[chain[common]] == pathEdges[common - 1])
+                common++;
+        }
+        if(chain.length < n)
+            chain = Arrays.copyOf(chain, Math.max(n, chain.length * 2));
+        if(common == 0)
+        {
+            chain[0] = newNode(-1, null, p.getStepV(0));
+            common = 1;
+        }
+        for(int i = common; i < n; i++)
+            chain[i] = newNode(chain[i - 1], pathEdges[i - 1], p.getStepV(i));
+        chainLength = n;
+        return new GraphPath(this, chain[n - 1]);
+    }
+
+    /**
+     * Store a path found by a PathEnumerator (during PathEnumerator.Visitor
+     * pathFound). Same as add(GraphPath) but reads the path straight from the
+     * enumerator.
+     * @param paths the enumerator that found the path
+     * @param pos position of the last edge of the path in the forward adjacency
+     * @return new (read only) GraphPath which is stored in this trie
+     */
+    public GraphPath add(PathEnumerator paths, int pos)
+    {
+        FrozenGraph frozen = paths.graph();
+        int n = paths.depth() + 2; // vertices in the path
+        Vertex start = frozen.vertex(paths.vertexAt(0));
+        int common = 0;
+        if(chainLength > 0 && verts[chain[0]] == start)
+        {
+            common = 1;
+            while(common < chainLength && common < n &&
+                    edges[chain[common]] == stepEdge(paths, pos, common))
+                common++;
+        }
+        if(chain.length < n)
+            chain = Arrays.copyOf(chain, Math.max(n, chain.length * 2));
+        if(common == 0)
+        {
+            chain[0] = newNode(-1, null, start);
+            common = 1;
+        }
+        for(int i = common; i < n; i++)
+        {
+            int v = i < n - 1 ? paths.vertexAt(i) : frozen.target(pos);
+            chain[i] = newNode(chain[i - 1], stepEdge(paths, pos, i),
+                    frozen.vertex(v));
+        }
+        chainLength = n;
+        return new GraphPath(this, chain[n - 1]);
+    }
+
+    /* Edge on some step of the path found by an enumerator */
+    private static DEdge stepEdge(PathEnumerator paths, int pos, int step)
+    {
+        FrozenGraph frozen = paths.graph();
+        if(step <= paths.depth())
+            return frozen.edge(paths.edgeIdAt(step));
+        return frozen.edge(frozen.edgeId(pos));
+    }
+
+    /**
+     * Number of nodes (stored steps) in the trie
+     * @return integer
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    private int newNode(int par, DEdge de, Vertex v)
+    {
+        if(size == parent.length)
+        {
+            int cap = parent.length * 2;
+            parent = Arrays.copyOf(parent, cap);
+            depth = Arrays.copyOf(depth, cap);
+            lbSum = Arrays.copyOf(lbSum, cap);
+            ubSum = Arrays.copyOf(ubSum, cap);
+            edges = Arrays.copyOf(edges, cap);
+            verts = Arrays.copyOf(verts, cap);
+        }
+        int node = size++;
+        parent[node] = par;
+        edges[node] = de;
+        verts[node] = v;
+        if(par < 0)
+        {
+            depth[node] = 0;
+            lbSum[node] = 0;
+            ubSum[node] = 0;
+        }
+        else
+        {
+            depth[node] = depth[par] + 1;
+            lbSum[node] = lbSum[par] + de.getLowerb();
+            ubSum[node] = ubSum[par] + de.getUpperb();
+        }
+        return node;
+    }
+
+    int parent(int node)
+    {
+        return parent[node];
+    }
+
+    int depth(int node)
+    {
+        return depth[node];
+    }
+
+    int lbSum(int node)
+    {
+        return lbSum[node];
+    }
+
+    int ubSum(int node)
+    {
+        return ubSum[node];
+    }
+
+    DEdge edge(int node)
+    {
+        return edges[node];
+    }
+
+    Vertex vertex(int node)
+    {
+        return verts[node];
+    }
+
+    /* Node of the path ending in node which is on some depth (0 is the root) */
+    int ancestor(int node, int d)
+    {
+        while(depth[node] > d)
+            node = parent[node];
+        return node;
+    }
+}
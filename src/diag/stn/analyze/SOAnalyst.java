@@ -20,6 +20,7 @@ import diag.stn.analyze.GraphPath;
 import diag.stn.analyze.Diagnosis;
 import diag.stn.STN.*;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
@@ -37,6 +38,8 @@ public class SOAnalyst extends Analyst
     HashMap<GraphPath,Boolean> smallerThanObs;
     HashMap<GraphPath,Boolean> consistencyHazard;
     HashMap<GraphPath,Integer> predSizes;
+    private int[] obsEnds; // frozen index of the end vertex per observation
+    private BitSet reachesEnd; // vertices that can reach some observation end
     
     /**
      * Creates a new analyst for a given Graph. Should be only used on problems
@@ -99,7 +102,6 @@ public class SOAnalyst extends Analyst
         consistencyHazard = new HashMap();
         predSizes = new HashMap();
         
-        GraphPath g = new GraphPath(ob.startV);
         Integer strtVal = fixedTimes.get(ob.startV); // lets hope that o.startV == p.getStepV(0)
         int lb,ub;
         if(strtVal != null)
@@ -112,7 +114,19 @@ public class SOAnalyst extends Analyst
             lb = 0;
             ub = 0;
         }
-        pathCalc(g, lb, ub); // here the propagation occurs
+        frozen = graph.freeze();
+        pathTrie = new PathTrie();
+        int start = frozen.indexOf(ob.startV);
+        obsEnds = new int[observations.size()];
+        reachesEnd = new BitSet(frozen.vSize());
+        for(int i = 0; i < observations.size(); i++)
+        {
+            obsEnds[i] = frozen.indexOf(observations.get(i).endV);
+            if(obsEnds[i] >= 0)
+                reachesEnd.or(frozen.reachability().reachersOf(obsEnds[i]));
+        }
+        if(start >= 0)
+            pathCalc(start, lb, ub); // here the propagation occurs
         
         for(Observation o : observations)
         {
@@ -164,9 +178,8 @@ public class SOAnalyst extends Analyst
                 chng[1] = Math.max(deltalb, deltaub);
                 if(chng[0] != 0 || chng[1] != 0)
                     o.fixneeded = true;
-                for(int n=1; n < paths[k].stepSize(); n++)
+                for(DEdge de : paths[k].toEdges())
                 {
-                    DEdge de = paths[k].getStepE(n);
                     de.addPossibleChange(chng[0], chng[1]); 
                     // store the possible changes
                     if(consistencyHazard.get(paths[k]))
@@ -188,71 +201,95 @@ public class SOAnalyst extends Analyst
                 + " generating the paths");
     }
     
-    // Calculate the lower and upper bound for some path and store them (diffstore)
-    private void pathCalc(GraphPath g, int lb, int ub)
+    // Calculate the lower and upper bound for all paths from start and store 
+    // them (diffstore), start is the index of the start vertex in the frozen graph.
+    // Steps into vertices that can not reach an observation end are skipped,
+    // so PATHPRINT only prints the steps on the way to some end.
+    private void pathCalc(int start, int lb, int ub)
     {
-        int dlb,dub;
         // combine generatePaths & propagateWeights
-        LinkedHashSet<DEdge> edgeExp = graph.possibleEdges(g.getLastV());
-        
-        if(DiagSTN.PATHPRINT)
-            g.smallPrint();
-        if(edgeExp == null)
-            return; // dead end!
-        if(DiagSTN.PATHPRINT)
-            System.out.println(edgeExp.size());
-        for(DEdge de : edgeExp)
+        BitSet targets = new BitSet(frozen.vSize());
+        for(int i = 0; i < obsEnds.length; i++)
+        {
+            if(obsEnds[i] >= 0)
+                targets.set(obsEnds[i]);
+        }
+        PathEnumerator enumerator = new PathEnumerator(frozen);
+        enumerator.enumerate(start, lb, ub, targets, reachesEnd, null,
+                new PathEnumerator.Visitor()
         {
-            dlb = 0;
-            dub = 0;
-            dlb = de.getLowerb() + lb;
-            dub = de.getUpperb() + ub;
-            for(Observation o : observations)
+            @Override
+            public void pathFound(PathEnumerator paths, int pos, int dlb, int dub)
             {
-                if(de.getEnd().equals(o.endV))
-                {
-                    if(DiagSTN.PATHPRINT)
-                    {
-                        System.out.println("SOAnalyst-pathCalc found path from"
-                            + g.getStepV(0).getName() + " to " + 
-                                o.endV.getName());
-                    }
-                    g.addStep(de, de.getEnd());
-                    LinkedHashSet<GraphPath> paths = obsPaths.get(o);
-                    if(paths == null) 
-                    {
-                        paths = new LinkedHashSet();
-                        obsPaths.put(o, paths);
-                    }
-                    GraphPath copyPath = g.copy(); // Need to use a copy from now
-                    paths.add(copyPath);
-                    int[] lbub = new int[2];
-                    lbub[0] = dlb;
-                    lbub[1] = dub;
-                    int predSize = dub-dlb;
-                    predSizes.put(copyPath, predSize);
-                    if(predSize < (o.endUb - o.endLb))
-                        smallerThanObs.put(copyPath, Boolean.TRUE);
-                    else
-                        smallerThanObs.put(copyPath, Boolean.FALSE);
-
-                    diffStore.put(copyPath, lbub);
-                    g.removeLast();
-                    // STILL NEEDS CODE TO COMBINE CHANGES
-                    // TO A PROPER lbub (for all paths on 1 obs)
-                }
+                storePath(paths, pos, dlb, dub);
             }
-            if(!g.edgeUsed(de))  // shouldn't be part of current path(takes)
+
+            @Override
+            public void stepTaken(PathEnumerator paths)
             {
-                g.addStep(de, de.getEnd());
-                pathCalc(g,dlb,dub);
-                g.removeLast();
+                if(DiagSTN.PATHPRINT)
+                    printStep(paths);
             }
-        }
+        });
         
         /**
          * When storing use the observation that needs to be found with the 
          * combination of starting vertex and ending vertex!
          */
     }
+    
+    // Store a path found by pathCalc for every observation ending in its end
+    private void storePath(PathEnumerator enumerator, int pos, int dlb, int dub)
+    {
+        int next = frozen.target(pos);
+        for(int i = 0; i < obsEnds.length; i++)
+        {
+            if(next == obsEnds[i])
+            {
+                Observation o = observations.get(i);
+                if(DiagSTN.PATHPRINT)
+                {
+                    System.out.println("SOAnalyst-pathCalc found path from"
+                        + frozen.vertex(enumerator.vertexAt(0)).getName() + 
+                            " to " + o.endV.getName());
+                }
+                LinkedHashSet<GraphPath> paths = obsPaths.get(o);
+                if(paths == null) 
+                {
+                    paths = new LinkedHashSet();
+                    obsPaths.put(o, paths);
+                }
+                GraphPath copyPath = pathTrie.add(enumerator, pos); // Need to use a copy from now
+                paths.add(copyPath);
+                int[] lbub = new int[2];
+                lbub[0] = dlb;
+                lbub[1] = dub;
+                int predSize = dub-dlb;
+                predSizes.put(copyPath, predSize);
+                if(predSize < (o.endUb - o.endLb))
+                    smallerThanObs.put(copyPath, Boolean.TRUE);
+                else
+                    smallerThanObs.put(copyPath, Boolean.FALSE);
+
+                diffStore.put(copyPath, lbub);
+                // STILL NEEDS CODE TO COMBINE CHANGES
+                // TO A PROPER lbub (for all paths on 1 obs)
+            }
+        }
+    }
+    
+    // Print the current path of pathCalc and the out degree of its last vertex
+    private void printStep(PathEnumerator enumerator)
+    {
+        System.out.print(frozen.vertex(enumerator.vertexAt(0)).getName());
+        for(int i = 1; i <= enumerator.depth(); i++)
+        {
+            System.out.print("-");
+            System.out.print(frozen.vertex(enumerator.vertexAt(i)).getName());
+        }
+        System.out.print("\n");
+        int last = enumerator.vertexAt(enumerator.depth());
+        if(frozen.outDegree(last) > 0)
+            System.out.println(frozen.outDegree(last));
+    }
 }
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2016 Frans van den Heuvel.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package diag.stn.analyze;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits a diagnosis search on the number of search nodes, on time or by
+ * cancelling it (from any thread). Every search node spends one unit of the
+ * budget, the clock is only read every so many nodes so checking is cheap.
+ * When the budget is used up the search stops and the analyst returns the
+ * diagnoses found so far (see Analyst.isPartial). The budget starts again
+ * for every search, a cancel stays until it is reset.
+ * @author Frans van den Heuvel
+ */
+public class SearchBudget
+{
+    private static final long CLOCK_MASK = 255; // read the clock every 256 nodes
+
+    private final long maxNodes;
+    private final long timeLimit; // nanoseconds
+    private final AtomicLong nodes;
+    private volatile long deadline;
+    private volatile boolean cancelled;
+    private volatile boolean exhausted;
+
+    /**
+     * Create a budget
+     * @param maxNodes maximum number of search nodes, 0 for no limit
+     * @param millis maximum time in milliseconds, 0 for no limit
+     */
+    public SearchBudget(long maxNodes, long millis)
+    {
+        this.maxNodes = maxNodes;
+        timeLimit = millis * 1000000L;
+        nodes = new AtomicLong();
+        cancelled = false;
+        exhausted = false;
+    }
+
+    /**
+     * Stop the search as soon as possible (can be called from another thread)
+     */
+    public void cancel()
+    {
+        cancelled = true;
+    }
+
+    /**
+     * Allow searching again after a cancel
+     */
+    public void reset()
+    {
+        cancelled = false;
+    }
+
+    /**
+     * Has cancel been called
+     * @return boolean
+     */
+    public boolean isCancelled()
+    {
+        return cancelled;
+    }
+
+    /**
+     * Did the last search run out of budget (or was it cancelled)
+     * @return true if the last search was stopped
+     */
+    public boolean isExhausted()
+    {
+        return exhausted;
+    }
+
+    /**
+     * Number of search nodes spent by the last search
+     * @return long
+     */
+    public long getNodes()
+    {
+        return nodes.get();
+    }
+
+    /* Start of a search: full budget */
+    void start()
+    {
+        nodes.set(0);
+        exhausted = false;
+        deadline = System.nanoTime() + timeLimit;
+    }
+
+    /* Spend a node, false if the search has to stop */
+    boolean spend()
+    {
+        if(exhausted)
+            return false;
+        long n = nodes.incrementAndGet();
+        if(cancelled || (maxNodes > 0 && n > maxNodes) || (timeLimit > 0 &&
+                (n & CLOCK_MASK) == 0 && System.nanoTime() - deadline > 0))
+        {
+            exhausted = true;
+            return false;
+        }
+        return true;
+    }
+}
@@ -15,190 +15,202 @@
  */
 package diag.stn.analyze;
 
-import diag.stn.DiagSTN;
 import diag.stn.STN.*;
-import java.lang.Math;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Deque;
-import java.util.HashMap;
+import java.util.Comparator;
 import java.util.Iterator;
-import java.util.LinkedHashSet;
-import java.util.LinkedList;
-import java.util.Map;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
 
 /**
  * A non-recursive version of Analyst (DiagSTN). Could perform better than 
- * recursive version in Java. (Warning just testing version)
+ * recursive version in Java. The diagnoses can also be pulled one at a time
+ * from diagnosisIterator() without keeping them all in memory. For very large
+ * problems a beam search (setBeamWidth) gives a limited number of diagnoses.
  * @author Frans van den Heuvel
  */
 public class StackAnalyst extends Analyst
 {
+    /** Beam cost: fewest changed edges first */
+    public static final Comparator<PartialDiagnosis> BY_SIZE =
+            Comparator.comparingInt(PartialDiagnosis::size);
+    /** Beam cost: highest change tally first (see Diagnosis.compareTo) */
+    public static final Comparator<PartialDiagnosis> BY_TALLY =
+            BY_SIZE.thenComparing(Comparator.comparingInt(
+                    PartialDiagnosis::chngtally).reversed());
+    /** Beam cost: smallest summed change width first */
+    public static final Comparator<PartialDiagnosis> BY_WIDTH =
+            Comparator.comparingLong(PartialDiagnosis::changeWidth);
+    
+    private int beamWidth;
+    private Comparator<PartialDiagnosis> beamCost;
+    private boolean exact;
     
     public StackAnalyst(Graph g)
     {
         super(g);
+        beamWidth = 0;
+        beamCost = BY_TALLY;
+        exact = true;
+    }
+    
+    /**
+     * Use a beam search: the paths are solved one at a time for all partial
+     * diagnoses together (breadth first) and after every path only the best
+     * width partial diagnoses are kept (see setBeamCost). Memory use is
+     * limited by the width, but diagnoses can be missed (see isExact).
+     * @param width maximum number of partial diagnoses kept, 0 for the exact
+     * (depth first) search which is the default
+     * @throws IllegalArgumentException if width is negative
+     */
+    public void setBeamWidth(int width)
+    {
+        if(width < 0)
+            throw new IllegalArgumentException("Beam width can not be negative");
+        beamWidth = width;
+    }
+    
+    /**
+     * Set how the beam search ranks partial diagnoses (BY_TALLY by default)
+     * @param cost Comparator which puts the best partial diagnosis first
+     */
+    public void setBeamCost(Comparator<PartialDiagnosis> cost)
+    {
+        beamCost = cost;
+    }
+    
+    /**
+     * Are the last generated diagnoses all diagnoses. For a beam search only
+     * if no partial diagnosis was dropped. Also false if the search budget was
+     * used up (see isPartial), a beam search then gives no diagnoses at all
+     * because its diagnoses are only complete after the last path.
+     * @return true if no diagnosis was missed
+     */
+    public boolean isExact()
+    {
+        return exact;
     }
     
     /**
-     * Get a list of all possible full diagnosis for this model. Needs propagateWeights
-     * to be done before diagnosis can start.
-     * @return A list of possible Diagnosis for the model
+     * Generate all possible full diagnosis for this model and give them to a
+     * consumer as soon as they are found, see diagnosisIterator(). With a beam
+     * width (see setBeamWidth) only the diagnoses left in the beam are given,
+     * after the last path (none if the search budget runs out before that).
+     * Needs propagateWeights to be done before diagnosis can start.
+     * @param found receives every Diagnosis that is found
      */
-    public Diagnosis[] generateDiagnosis()
+    @Override
+    public void generateDiagnosis(Consumer<Diagnosis> found)
+    {
+        if(beamWidth > 0)
+            beamSearch(pathsToDiagnose(), found);
+        else
+            diagnosisIterator().forEachRemaining(found);
+    }
+    
+    /* Breadth first search over the paths, keeping at most beamWidth partial
+    diagnoses after every path */
+    private void beamSearch(GraphPath[] paths, Consumer<Diagnosis> found)
     {
-        LinkedList<GraphPath> needDiag = new LinkedList<>();
-        // First repair possible inconsistent observations
-        if(!DiagSTN.IGNOREINCONSIST && inconsistent != null) 
+        exact = true;
+        if(paths.length == 0)
+            return;
+        List<PartialDiagnosis> frontier = new ArrayList<>();
+        frontier.add(PartialDiagnosis.EMPTY);
+        for(int current = 0; current < paths.length && !frontier.isEmpty(); current++)
         {
-            if(DiagSTN.PRINTWARNING)
-                System.out.println("Found inconsistent paths, will proceed with"
-                        + " repair suggestions");
-            Iterator<Observation> incIter = inconsistent.iterator();
-            while(incIter.hasNext())
+            List<PartialDiagnosis> next = new ArrayList<>();
+            for(PartialDiagnosis diag : frontier)
+                next.addAll(branches(diag, paths, current));
+            if(next.size() > beamWidth)
             {
-                Observation incObs = incIter.next();
-                LinkedHashSet<GraphPath> pathSet = obsPaths.get(incObs);
-                for(GraphPath p : pathSet)
-                    needDiag.add(p);
+                next.sort(beamCost); // stable, so ties keep the search order
+                next = new ArrayList<>(next.subList(0, beamWidth));
+                exact = false;
             }
+            frontier = next;
         }
-        else
+        if(isPartial())
         {
-            for(Observation ob: observations)
-            {
-                if(ob.fixneeded)
-                {
-                    LinkedHashSet<GraphPath> pathSet = obsPaths.get(ob);
-                    for(GraphPath p : pathSet)
-                        needDiag.add(p);    // faster way to copy?
-                }
-            }
+            exact = false;
+            return; // the beam does not solve all paths yet
         }
-        
-        generateDiagnosis(needDiag);
-        return diagnosisList.toArray(new Diagnosis[diagnosisList.size()]);
+        for(PartialDiagnosis diag : frontier)
+            found.accept(diag.toDiagnosis());
+    }
+    
+    /**
+     * Iterator over all possible full diagnosis for this model. The search tree
+     * is traversed on an explicit stack and a diagnosis is only searched for
+     * when it is asked for, so only the diagnoses on the stack (at most the
+     * number of paths to solve times the changes per path) are in memory. Stop
+     * early by simply not asking for more. Once it has no more diagnoses
+     * isExact tells if the search budget stopped it. Needs propagateWeights to
+     * be done before diagnosis can start.
+     * @return Iterator with the Diagnosis objects (same order as generateDiagnosis)
+     */
+    public Iterator<Diagnosis> diagnosisIterator()
+    {
+        exact = true;
+        return new DiagnosisIterator(pathsToDiagnose());
     }
     
-    /* Underlying generateDiagnosis method used to recursively traverse the tree
-     * of problem edges */ 
-    private void generateDiagnosis(LinkedList<GraphPath> wronglyPredicted)
+    /* Depth first search where every stack level holds the diagnoses that still
+    need to be tried for one path */
+    private class DiagnosisIterator implements Iterator<Diagnosis>
     {
-        LinkedList<GraphPath> solvedPaths = new LinkedList(); 
-        LinkedList<Diagnosis> tempDiagnoses = new LinkedList(); // All partial diagnoses
+        private final GraphPath[] paths;
+        private final ArrayList<List<PartialDiagnosis>> stack;
+        private final int[] cursor; // next diagnosis to try on every level
+        private Diagnosis next;
         
-        // Initialize tempDiag.
-        GraphPath current = wronglyPredicted.pop();
+        DiagnosisIterator(GraphPath[] p)
+        {
+            paths = p;
+            stack = new ArrayList<>();
+            cursor = new int[p.length];
+            if(p.length > 0)
+                stack.add(branches(PartialDiagnosis.EMPTY, paths, 0));
+            next = advance();
+        }
         
-        for(int i = 1; i < current.stepSize(); i++)
+        @Override
+        public boolean hasNext()
         {
-            DEdge edge = current.getStepE(i);
-            Diagnosis diag = new Diagnosis();
-            
-            // if combine possible
-            boolean combine = true;
-            ArrayList<int[]> changes = edge.getPossibleChanges();
-            int[] finalchng = changes.remove(changes.size()-1); // lets start with the last added bounds
-            for(int[] bounds : changes)
-            {
-                if((bounds[0] > finalchng[1])||(bounds[1] < finalchng[0]))
-                {
-                    combine = false;
-                    break;
-                }
-                else
-                {
-                    if(bounds[0] > finalchng[0])
-                        finalchng[0] = bounds[0];
-                    if(bounds[1] < finalchng[1])
-                        finalchng[1] = bounds[1];
-                }
-            }
-            if(combine)
-            {
-                diag.addPartial(edge, finalchng[0], finalchng[1]);
-                tempDiagnoses.add(diag);
-            }
+            return next != null;
         }
-        solvedPaths.add(current);
         
-        // Every time a GraphPath has been tested for all diagnoses, it is removed
-        while(!wronglyPredicted.isEmpty())
+        @Override
+        public Diagnosis next()
         {
-            // A list which will replace the tempDiagnoses when done
-            // (Continue to next round)
-            LinkedList<Diagnosis> contiDiag = new LinkedList();
-            
-            // Pop a path and continue with changed Diagnoses.
-            current = wronglyPredicted.pop();
-            
-            for(Iterator<Diagnosis> it = tempDiagnoses.iterator(); it.hasNext();)
+            if(next == null)
+                throw new NoSuchElementException();
+            Diagnosis out = next;
+            next = advance();
+            return out;
+        }
+        
+        /* Continue the search up to the next full diagnosis, null if done */
+        private Diagnosis advance()
+        {
+            while(!stack.isEmpty())
             {
-                Diagnosis d = it.next();
-                
-                // Any diagnosis that already solves this path can be passed on
-                if(d.edgeUsed(current))
+                int level = stack.size() - 1;
+                List<PartialDiagnosis> options = stack.get(level);
+                if(cursor[level] == options.size())
                 {
-                    contiDiag.add(d);
-                }
-                else // All the other diagnoses must be processed
-                {
-                    // For every edge, there might a solution diagnosis
-                    for(int j = 1; j < current.stepSize(); j++)
-                    {
-                        DEdge edge = current.getStepE(j);
-                               
-                        // Edge shouldnt be part of a path which is already solved
-                        boolean partOfSolved = false;
-                        for(GraphPath p : solvedPaths)
-                        {
-                            if(p.edgeUsed(edge))
-                            {
-                                partOfSolved = true;
-                                break;
-                            }
-                        }
-                        if(partOfSolved)
-                            continue; // Skip this edge, 
-                        
-                        // if combine possible
-                        boolean combine = true;
-                        ArrayList<int[]> changes = edge.getPossibleChanges();
-                        // lets start with the last added bounds
-                        int[] finalchng = changes.remove(changes.size()-1);
-                        for(int[] bounds : changes)
-                        {
-                            if((bounds[0] > finalchng[1])||(bounds[1] < finalchng[0]))
-                            {
-                                combine = false;
-                                break;
-                            }
-                            else
-                            {
-                                if(bounds[0] > finalchng[0])
-                                    finalchng[0] = bounds[0];
-                                if(bounds[1] < finalchng[1])
-                                    finalchng[1] = bounds[1];
-                            }
-                        }
-                        if(combine)
-                        {
-                            Diagnosis dConti = d.copy();
-                            dConti.addPartial(edge, finalchng[0], finalchng[1]);
-                            contiDiag.add(dConti);
-                        }
-                        // others are simply forgotten in some tempDiagnoses
-                    }
+                    stack.remove(level); // all tried, go back
+                    continue;
                 }
+                PartialDiagnosis diag = options.get(cursor[level]++);
+                if(level == paths.length - 1)
+                    return diag.toDiagnosis(); // solves the last path
+                cursor[level + 1] = 0;
+                stack.add(branches(diag, paths, level + 1));
             }
-            // contiDiag contains the diagnoses that passed the test of this 
-            // path (i.e. conflict set)
-            solvedPaths.add(current);
-            tempDiagnoses = contiDiag;
+            exact = !isPartial(); // the budget may have cut branches
+            return null;
         }
-        
-        // Done, copy them to final Array
-        for(Diagnosis finalDiag : tempDiagnoses)
-            diagnosisList.add(finalDiag);
     }
 }
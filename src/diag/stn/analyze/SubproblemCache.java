@@ -0,0 +1,238 @@
+/*
+ * Copyright 2016 Frans van den Heuvel.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package diag.stn.analyze;
+
+import diag.stn.STN.DEdge;
+import java.math.BigInteger;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Transposition table for the diagnosis search. What the search finds below
+ * a partial diagnosis only depends on the path it handles next and on which
+ * of the remaining paths the partial diagnosis solves already (the edges which
+ * can be used on a path and their combined changes are the same on every
+ * branch). So the changes found below such a state are stored once and reused
+ * by every branch that reaches it. The least recently used states are removed
+ * when the (estimated) memory use gets over the budget. Also keeps the
+ * counts of the states for Analyst.countDiagnoses (instead of the changes),
+ * under the same budget. Can be shared between threads.
+ * @author Frans van den Heuvel
+ */
+public class SubproblemCache
+{
+    // Rough object sizes (bytes) used to estimate the memory use
+    private static final long ENTRY_BYTES = 96;
+    private static final long SUFFIX_BYTES = 24;
+    private static final long EDGE_BYTES = 8;
+    private static final long NUMBER_BYTES = 56; // BigInteger and its array
+
+    private final long budget;
+    private long used;
+    private long hits;
+    private long misses;
+    private final LinkedHashMap<State, Entry> table;
+
+    /* Search state: the paths array, the next path and the solved paths */
+    static final class State
+    {
+        private final GraphPath[] paths;
+        private final int current;
+        private final BitSet solved; // remaining paths already solved
+        private final int hash;
+
+        State(GraphPath[] p, int c, BitSet s)
+        {
+            paths = p;
+            current = c;
+            solved = s;
+            hash = (System.identityHashCode(p) * 31 + c) * 31 + s.hashCode();
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if(!(o instanceof State))
+                return false;
+            State other = (State) o;
+            return paths == other.paths && current == other.current &&
+                    solved.equals(other.solved);
+        }
+    }
+
+    /* Changes found below a state (every suffix is one full diagnosis) or
+    their count */
+    private static final class Entry
+    {
+        final List<DEdge[]> suffixes; // null if counted
+        final DiagnosisCount count; // null if not counted
+        final long bytes;
+
+        Entry(List<DEdge[]> s)
+        {
+            suffixes = s;
+            count = null;
+            long b = ENTRY_BYTES;
+            for(DEdge[] suffix : s)
+                b += SUFFIX_BYTES + EDGE_BYTES * suffix.length;
+            bytes = b;
+        }
+
+        Entry(DiagnosisCount c)
+        {
+            suffixes = null;
+            count = c;
+            bytes = ENTRY_BYTES + numberBytes(c.getCount()) +
+                    numberBytes(c.getEdges()) + numberBytes(c.getWidth());
+        }
+
+        private static long numberBytes(BigInteger n)
+        {
+            return NUMBER_BYTES + n.bitLength() / 8;
+        }
+    }
+
+    /**
+     * Create an empty cache
+     * @param bytes memory budget (estimated) in bytes
+     */
+    public SubproblemCache(long bytes)
+    {
+        budget = bytes;
+        used = 0;
+        table = new LinkedHashMap<>(64, 0.75f, true); // access order
+    }
+
+    /**
+     * Stored suffixes of a state
+     * @param state search state
+     * @return list of the changed edges (in search order) of every full
+     * diagnosis below the state, null if not stored (do not change the list)
+     */
+    synchronized List<DEdge[]> get(State state)
+    {
+        Entry e = find(state);
+        return e == null ? null : e.suffixes;
+    }
+
+    /**
+     * Stored count of a state
+     * @param state search state
+     * @return DiagnosisCount of the diagnoses below the state, null if not
+     * stored
+     */
+    synchronized DiagnosisCount getCount(State state)
+    {
+        Entry e = find(state);
+        return e == null ? null : e.count;
+    }
+
+    private Entry find(State state)
+    {
+        Entry e = table.get(state);
+        if(e == null)
+        {
+            misses++;
+            return null;
+        }
+        hits++;
+        return e;
+    }
+
+    /**
+     * Store the suffixes of a state, removes the least recently used states
+     * if needed. Results larger than the budget are not stored.
+     * @param state search state
+     * @param suffixes list of changed edges (is not copied, do not change)
+     */
+    synchronized void put(State state, List<DEdge[]> suffixes)
+    {
+        store(state, new Entry(suffixes));
+    }
+
+    /**
+     * Store the count of a state, removes the least recently used states if
+     * needed
+     * @param state search state
+     * @param count DiagnosisCount of the diagnoses below the state
+     */
+    synchronized void putCount(State state, DiagnosisCount count)
+    {
+        store(state, new Entry(count));
+    }
+
+    private void store(State state, Entry e)
+    {
+        if(e.bytes > budget)
+            return;
+        Entry old = table.put(state, e);
+        if(old != null)
+            used -= old.bytes;
+        used += e.bytes;
+        Iterator<Map.Entry<State, Entry>> it = table.entrySet().iterator();
+        while(used > budget && it.hasNext())
+        {
+            Entry eldest = it.next().getValue();
+            used -= eldest.bytes;
+            it.remove();
+        }
+    }
+
+    /**
+     * Remove all stored states
+     */
+    public synchronized void clear()
+    {
+        table.clear();
+        used = 0;
+    }
+
+    /**
+     * Number of searches that could use a stored state
+     * @return long
+     */
+    public synchronized long getHits()
+    {
+        return hits;
+    }
+
+    /**
+     * Number of searches that had to search the subtree
+     * @return long
+     */
+    public synchronized long getMisses()
+    {
+        return misses;
+    }
+
+    /**
+     * Estimated memory use of the stored states
+     * @return bytes
+     */
+    public synchronized long getUsedBytes()
+    {
+        return used;
+    }
+}
@@ -0,0 +1,425 @@
+/*
+ * Copyright 2016 Frans van den Heuvel.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package diag.stn.analyze;
+
+import diag.stn.CorrectCheck;
+import diag.stn.GraphGenSettings;
+import diag.stn.GraphGenerator;
+import diag.stn.GraphGenerator.GraphObs;
+import diag.stn.STN.*;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Checks that the different ways of searching diagnoses agree with the plain
+ * (sequential, uncached) diagnosis search of the Analyst on generated problems,
+ * and that the counting methods agree with the diagnoses it finds. Also checks
+ * the path estimates and the minimal hitting sets of the consistency based
+ * diagnosis.
+ * Prints every difference it finds and a summary, run with the number of
+ * problems as (optional) argument.
+ * @author Frans van den Heuvel
+ */
+public class SearchCheck
+{
+    private int checks;
+    private int failures;
+    private long diagnoses; // found by the plain search
+
+    /**
+     * @param args optional number of problems to generate (default 50)
+     */
+    public static void main(String[] args)
+    {
+        int iter = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        SearchCheck check = new SearchCheck();
+        check.run(iter);
+        System.out.println(check.checks + " checks (" + check.diagnoses +
+                " diagnoses), " + check.failures + " failed");
+        if(check.failures > 0)
+            System.exit(1);
+    }
+
+    /**
+     * Generate problems (Barabàsi-Albert and plan-like graphs in turn) and
+     * check all search variants on them
+     * @param iter number of problems
+     */
+    public void run(int iter)
+    {
+        checkCycleEstimates();
+        GraphGenerator gen = new GraphGenerator();
+        for(int i = 0; i < iter; i++)
+        {
+            GraphGenSettings setting;
+            if(i % 2 == 0)
+            {
+                setting = new GraphGenSettings(GraphGenSettings.BAGRAPH);
+                setting.BAGraph(20 + i % 20, 2, false, 2 + i % 3, 4, 10, false);
+            }
+            else
+            {
+                setting = new GraphGenSettings(GraphGenSettings.PLANLIKEGRAPH);
+                setting.planlikeGraph(3, 6, 10, 2, 2, 2 + i % 3, 5, 10, false);
+            }
+            GraphObs problem = generate(gen, setting);
+            checkEstimates(prepare(new Analyst(problem.graph.copy()), problem));
+            checkSearches(problem);
+            checkCounts(problem, false);
+            checkCounts(problem, true);
+            checkHittingSets(new Random(i));
+        }
+    }
+
+    private static GraphObs generate(GraphGenerator gen, GraphGenSettings setting)
+    {
+        GraphObs problem;
+        do
+        {
+            if(setting.type == GraphGenSettings.BAGRAPH)
+                problem = gen.generateBAGraph(setting);
+            else
+                problem = gen.generatePlanlikeGraph(setting);
+        } while(!problem.success);
+        return problem;
+    }
+
+    /* Path estimates of observations that start and end at the same vertex
+    (generated problems have none): s to x over 1 to 3 parallel edges and
+    back to s */
+    private void checkCycleEstimates()
+    {
+        for(int parallel = 1; parallel <= 3; parallel++)
+        {
+            Graph g = new Graph();
+            Vertex s = new Vertex(0);
+            Vertex x = new Vertex(1);
+            g.addVertex(s);
+            g.addVertex(x);
+            for(int i = 0; i < parallel; i++)
+                g.addEdge(s, x, 1, 2);
+            g.addEdge(x, s, 1, 2);
+            Analyst a = new Analyst(g);
+            a.addObservation(new Observation(s, s, 2, 4));
+            a.generatePaths();
+            checkEstimates(a);
+        }
+    }
+
+    /* The path estimate of every observation is exact (if it says so) or at
+    least the number of generated paths (paths already generated) */
+    private void checkEstimates(Analyst a)
+    {
+        for(Map.Entry<Observation, PathCountEstimator.Estimate> e :
+                a.estimatePaths().entrySet())
+        {
+            Set<GraphPath> paths = a.obsPaths.get(e.getKey());
+            BigInteger generated = BigInteger.valueOf(paths == null ? 0 : paths.size());
+            PathCountEstimator.Estimate est = e.getValue();
+            int c = est.paths.compareTo(generated);
+            check("path estimate", est.exact ? c == 0 : c >= 0, est.paths +
+                    (est.exact ? " (exact)" : "") + " for " + generated + " paths");
+        }
+    }
+
+    /* Compares the other search variants with the plain search */
+    private void checkSearches(GraphObs problem)
+    {
+        List<String> plain = describe(prepare(new Analyst(problem.graph.copy()),
+                problem).generateDiagnosis());
+        diagnoses += plain.size();
+
+        // Cached search, also with a small limit so only parts are stored
+        for(int limit : new int[] {1, 256})
+        {
+            Analyst cached = new Analyst(problem.graph.copy());
+            cached.setMemoryBudget(1 << 20, limit);
+            compare("cached search (limit " + limit + ")", plain,
+                    describe(prepare(cached, problem).generateDiagnosis()));
+        }
+
+        ParallelAnalyst parallel = new ParallelAnalyst(problem.graph.copy(), 3, 2);
+        compare("parallel search", plain,
+                describe(prepare(parallel, problem).generateDiagnosis()));
+        parallel.shutdown();
+
+        checkBudgets(problem, plain);
+    }
+
+    /* A search stopped by its budget gives the first diagnoses of the plain
+    search, a cancelled one and a beam search out of budget give none */
+    private void checkBudgets(GraphObs problem, List<String> plain)
+    {
+        SearchBudget unlimited = new SearchBudget(0, 0);
+        Analyst a = prepare(new Analyst(problem.graph.copy()), problem);
+        a.setSearchBudget(unlimited);
+        a.generateDiagnosis();
+        long nodes = unlimited.getNodes();
+
+        long half = Math.max(1, nodes / 2);
+        Analyst limited = prepare(new Analyst(problem.graph.copy()), problem);
+        limited.setSearchBudget(new SearchBudget(half, 0));
+        List<String> found = describe(limited.generateDiagnosis());
+        check("search of " + half + " nodes", found.size() <= plain.size() &&
+                plain.subList(0, found.size()).equals(found) &&
+                limited.isPartial() == half < nodes,
+                found + " of " + plain + ", partial " + limited.isPartial());
+
+        SearchBudget cancelled = new SearchBudget(0, 0);
+        cancelled.cancel();
+        Analyst stopped = prepare(new Analyst(problem.graph.copy()), problem);
+        stopped.setSearchBudget(cancelled);
+        found = describe(stopped.generateDiagnosis());
+        check("cancelled search", found.isEmpty() && stopped.isPartial(),
+                found + ", partial " + stopped.isPartial());
+
+        StackAnalyst beam = new StackAnalyst(problem.graph.copy());
+        beam.setBeamWidth(2);
+        beam.setSearchBudget(new SearchBudget(1, 0));
+        found = describe(prepare(beam, problem).generateDiagnosis());
+        check("beam search out of budget", !beam.isPartial() ||
+                (found.isEmpty() && !beam.isExact()),
+                found + ", exact " + beam.isExact());
+
+        StackAnalyst depthFirst = new StackAnalyst(problem.graph.copy());
+        depthFirst.setSearchBudget(new SearchBudget(half, 0));
+        found = describe(prepare(depthFirst, problem).generateDiagnosis());
+        check("stack search of " + half + " nodes", depthFirst.isPartial() ?
+                !depthFirst.isExact() : depthFirst.isExact() && found.equals(plain),
+                found + ", exact " + depthFirst.isExact());
+    }
+
+    /* Compares the counting methods with the diagnoses of the plain search
+    (of an Analyst or a ConAnalyst) */
+    private void checkCounts(GraphObs problem, boolean con)
+    {
+        String kind = con ? "ConAnalyst " : "Analyst ";
+        Diagnosis[] diags = prepare(analyst(problem, con), problem).generateDiagnosis();
+        long edges = 0;
+        for(Diagnosis d : diags)
+            edges += d.getEdgesChanged().length;
+        String expected = diags.length + " diagnoses, " + edges + " changes, width " +
+                CorrectCheck.diagnosisSize(diags);
+
+        // Counts kept in a cache of their own and in one so small that most
+        // states are removed again
+        compare(kind + "count", expected,
+                prepare(analyst(problem, con), problem).countDiagnoses().toString());
+        Analyst small = analyst(problem, con);
+        small.setMemoryBudget(1 << 10);
+        compare(kind + "count (small cache)", expected,
+                prepare(small, problem).countDiagnoses().toString());
+
+        compare(kind + "edge frequencies", frequencies(diags),
+                describe(prepare(analyst(problem, con), problem).edgeFrequencies()));
+
+        // The product has the same diagnoses, in another order
+        DiagnosisProduct product = prepare(analyst(problem, con), problem)
+                .generateDiagnosisProduct();
+        List<String> combined = new ArrayList<>();
+        for(Diagnosis d : product)
+            combined.add(describe(d));
+        List<String> plain = describe(diags);
+        Collections.sort(combined);
+        Collections.sort(plain);
+        compare(kind + "diagnosis product", plain, combined);
+        compare(kind + "product count", diags.length, product.count().intValue());
+    }
+
+    private static Analyst analyst(GraphObs problem, boolean con)
+    {
+        Graph g = problem.graph.copy();
+        return con ? new ConAnalyst(g) : new Analyst(g);
+    }
+
+    /* Compares the HittingSetTree with all minimal hitting sets found by
+    trying every subset, on a random family of conflicts of at most 12 edges
+    (sometimes with an empty conflict or a size limit) */
+    private void checkHittingSets(Random rand)
+    {
+        int n = 2 + rand.nextInt(11);
+        DEdge[] edges = new DEdge[n];
+        for(int i = 0; i < n; i++)
+            edges[i] = new DEdge(new Vertex(i), new Vertex(i + 1));
+        HittingSetTree tree = new HittingSetTree();
+        List<Integer> conflicts = new ArrayList<>(); // edges as bits
+        int m = 1 + rand.nextInt(6);
+        for(int c = 0; c < m; c++)
+        {
+            int conflict = 0;
+            for(int i = 0; i < n; i++)
+            {
+                if(rand.nextInt(3) == 0)
+                    conflict |= 1 << i;
+            }
+            if(conflict == 0 && rand.nextInt(5) > 0)
+                conflict = 1 << rand.nextInt(n);
+            List<DEdge> list = new ArrayList<>();
+            for(int i = 0; i < n; i++)
+            {
+                if((conflict >> i & 1) == 1)
+                    list.add(edges[i]);
+            }
+            conflicts.add(conflict);
+            tree.addConflict(list);
+        }
+        int maxSize = rand.nextInt(3) == 0 ? 1 + rand.nextInt(3) : -1;
+
+        Set<Integer> expected = new HashSet<>();
+        for(int set = 0; set < 1 << n; set++)
+        {
+            if(!hitsAll(set, conflicts) ||
+                    (maxSize >= 0 && Integer.bitCount(set) > maxSize))
+                continue;
+            boolean minimal = true;
+            for(int i = 0; i < n && minimal; i++)
+            {
+                if((set >> i & 1) == 1 && hitsAll(set & ~(1 << i), conflicts))
+                    minimal = false;
+            }
+            if(minimal)
+                expected.add(set);
+        }
+
+        Set<Integer> found = new HashSet<>();
+        int lastSize = 0;
+        boolean ordered = true;
+        List<DEdge[]> sets = tree.minimalHittingSets(maxSize, () -> true);
+        for(DEdge[] hs : sets)
+        {
+            int set = 0;
+            for(DEdge de : hs)
+                set |= 1 << de.getStart().getID();
+            found.add(set);
+            ordered &= hs.length >= lastSize;
+            lastSize = hs.length;
+        }
+        compare("hitting sets of " + conflicts, expected, found);
+        check("hitting sets of " + conflicts, sets.size() == found.size() && ordered,
+                "duplicates or not in order of size");
+    }
+
+    private static boolean hitsAll(int set, List<Integer> conflicts)
+    {
+        for(int conflict : conflicts)
+        {
+            if((conflict & set) == 0)
+                return false;
+        }
+        return true;
+    }
+
+    /* Adds the observations of the problem to an analyst of a copy of the
+    problem graph (vertices are found by id) and propagates them */
+    private static Analyst prepare(Analyst a, GraphObs problem)
+    {
+        for(Observation ob : problem.observations)
+        {
+            a.addObservation(new Observation(a.graph.getVertex(ob.startV.getID()),
+                    a.graph.getVertex(ob.endV.getID()), ob.endLb, ob.endUb));
+        }
+        a.generatePaths();
+        a.propagateWeights();
+        return a;
+    }
+
+    /* Diagnoses as text in their order, the edges of a diagnosis sorted */
+    private static List<String> describe(Diagnosis[] diags)
+    {
+        List<String> out = new ArrayList<>();
+        for(Diagnosis d : diags)
+            out.add(describe(d));
+        return out;
+    }
+
+    private static String describe(Diagnosis d)
+    {
+        List<String> changes = new ArrayList<>();
+        for(DEdge de : d.getEdgesChanged())
+        {
+            int[] c = d.getChanges(de);
+            changes.add(describe(de, c[0], c[1]));
+        }
+        Collections.sort(changes);
+        return changes.toString();
+    }
+
+    /* The edge frequencies counted from a list of diagnoses, the same way
+    Analyst.edgeFrequencies orders them */
+    private static List<String> frequencies(Diagnosis[] diags)
+    {
+        Map<DEdge, Integer> counts = new HashMap<>();
+        Map<DEdge, int[]> changes = new HashMap<>();
+        for(Diagnosis d : diags)
+        {
+            for(DEdge de : d.getEdgesChanged())
+            {
+                counts.merge(de, 1, Integer::sum);
+                changes.putIfAbsent(de, d.getChanges(de));
+            }
+        }
+        List<DEdge> edges = new ArrayList<>(counts.keySet());
+        edges.sort((a, b) ->
+        {
+            int c = Integer.compare(counts.get(b), counts.get(a));
+            return c != 0 ? c : Integer.compare(a.getID(), b.getID());
+        });
+        List<String> out = new ArrayList<>();
+        for(DEdge de : edges)
+        {
+            int[] c = changes.get(de);
+            out.add(describe(de, c[0], c[1]) + " " + counts.get(de) + "/" +
+                    diags.length);
+        }
+        return out;
+    }
+
+    private static List<String> describe(List<EdgeFrequency> freqs)
+    {
+        List<String> out = new ArrayList<>();
+        for(EdgeFrequency f : freqs)
+            out.add(describe(f.getEdge(), f.getLowerb(), f.getUpperb()) + " " +
+                    f.getCount() + "/" + f.getTotal());
+        return out;
+    }
+
+    private static String describe(DEdge de, int lb, int ub)
+    {
+        return de.getStart().getID() + ">" + de.getEnd().getID() + "[" + lb +
+                "," + ub + "]";
+    }
+
+    private void compare(String what, Object expected, Object found)
+    {
+        check(what, expected.equals(found), expected + " but found " + found);
+    }
+
+    private void check(String what, boolean ok, String detail)
+    {
+        checks++;
+        if(ok)
+            return;
+        failures++;
+        System.out.println("Difference in " + what + ": " + detail);
+    }
+}